@@ -0,0 +1,25 @@
+package gitlet;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/** Entry point of benchmarks.jar.  Accepts the usual JMH command line
+ *  options, e.g.
+ *      java -jar benchmarks.jar -p files=1000 -p commits=5000 -rff out.json
+ *  but writes results as JSON (to jmh-result.json unless -rff is given)
+ *  when no -rf option is present.
+ */
+public class Benchmarks {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(cli);
+        if (!cli.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,155 @@
+package gitlet;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static gitlet.Utils.*;
+
+/** A synthetic repository shared by all benchmarks of one fork.
+ *
+ *  Repository roots all of its paths at user.dir when the class is first
+ *  initialized, so the repository is created in a fresh temporary
+ *  directory before any Repository code runs.  JMH forks a new JVM per
+ *  benchmark and parameter combination, so every trial gets its own repo.
+ *
+ *  The history is made by RepoGenerator: FILES files on master, COMMITS
+ *  commits on master each touching about a tenth of the files, BRANCHES
+ *  branches spread evenly over that history.  On top of that comes a
+ *  "bench-merge" branch that diverges from master for the last few
+ *  commits on both sides.
+ */
+@State(Scope.Benchmark)
+public class RepoState {
+
+    /** Number of files in the working tree. */
+    @Param("100")
+    public int files;
+
+    /** Number of commits on master. */
+    @Param("100")
+    public int commits;
+
+    /** Number of extra branches. */
+    @Param("8")
+    public int branches;
+
+    /** Mean file size in bytes. */
+    @Param("1024")
+    public int fileSize;
+
+    /** One of fixed, uniform or pareto. */
+    @Param("fixed")
+    public String sizeDistribution;
+
+    /** Seed for every random choice, so runs are reproducible. */
+    @Param("42")
+    public long seed;
+
+    /** Number of commits on each side of the bench-merge split. */
+    static final int DIVERGENCE = 3;
+
+    Repository repo;
+    Path root;
+    RepoGenerator generator;
+    private PrintStream stdout;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("gitlet-bench");
+        System.setProperty("user.dir", root.toString());
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        repo = new Repository();
+        build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(stdout);
+        delete(root);
+    }
+
+    /** Run the command ARGS through Main.run, as from the command line:
+     *  under the repository lock and in a transaction of its own, which
+     *  is aborted, with the caches reset, if the command fails. */
+    void run(String... args) {
+        Main.run(repo, args);
+    }
+
+    /** Returns the id of the commit at the tip of BRANCH. */
+    String tip(String branch) {
+        return new Refs(Repository.GITLET_DIR).get(branch);
+    }
+
+    /** Returns the name of the currently checked-out branch. */
+    String currentBranch() {
+        return readContentsAsString(Repository.HEAD_FILE);
+    }
+
+    /** Returns the name of a random tracked file. */
+    String randomFile() {
+        return generator.randomFile();
+    }
+
+    /** Overwrite the working file NAME with fresh random contents. */
+    void rewrite(String name) {
+        writeContents(join(Repository.CWD, name), generator.nextContents());
+    }
+
+    /** Recursively delete PATH. */
+    static void delete(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(path)) {
+            walk.sorted(Comparator.reverseOrder()).map(Path::toFile)
+                .forEach(File::delete);
+        }
+    }
+
+    private void build() {
+        generator = new RepoGenerator();
+        generator.files = files;
+        generator.commits = commits;
+        generator.changes = Math.max(1, files / 10);
+        generator.branches = branches;
+        generator.fileSize = fileSize;
+        generator.distribution = sizeDistribution;
+        generator.seed = seed;
+        generator.generate();
+
+        run("branch", "bench-merge");
+        run("checkout", "bench-merge");
+        for (int c = 0; c < DIVERGENCE; c++) {
+            commitRandomChanges("bench-merge commit " + c);
+        }
+        run("checkout", "master");
+        for (int c = 0; c < DIVERGENCE; c++) {
+            commitRandomChanges("master commit " + c);
+        }
+    }
+
+    private void commitRandomChanges(String message) {
+        int changes = Math.max(1, files / 10);
+        for (int i = 0; i < changes; i++) {
+            String name = randomFile();
+            rewrite(name);
+            run("add", name);
+        }
+        run("commit", message);
+    }
+}
@@ -0,0 +1,153 @@
+package gitlet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/** One benchmark per Repository command, each run against the synthetic
+ *  repository of RepoState.  Commands that change the repository get a
+ *  per-invocation setup that puts it back into a state in which the
+ *  command does real work; that setup is not measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepositoryBenchmark {
+
+    /** A tracked file that has just been modified in the working tree. */
+    @State(Scope.Thread)
+    public static class ModifiedFile {
+        String name;
+
+        @Setup(Level.Invocation)
+        public void modify(RepoState state) {
+            name = state.randomFile();
+            state.rewrite(name);
+        }
+    }
+
+    /** A modified file that has been staged, so commit has work to do. */
+    @State(Scope.Thread)
+    public static class StagedFile {
+        @Setup(Level.Invocation)
+        public void stage(RepoState state) {
+            String name = state.randomFile();
+            state.rewrite(name);
+            state.run("add", name);
+        }
+    }
+
+    /** The branch to switch to: whichever of master and bench-merge is
+     *  not checked out. */
+    @State(Scope.Thread)
+    public static class OtherBranch {
+        String name;
+
+        @Setup(Level.Invocation)
+        public void pick(RepoState state) {
+            name = state.currentBranch().equals("master") ? "bench-merge" : "master";
+        }
+    }
+
+    /** Master reset to its original tip, so that merging bench-merge is a
+     *  real three-way merge every time. */
+    @State(Scope.Thread)
+    public static class UnmergedMaster {
+        String masterTip;
+
+        @Setup(Level.Trial)
+        public void remember(RepoState state) {
+            masterTip = state.tip("master");
+        }
+
+        @Setup(Level.Invocation)
+        public void reset(RepoState state) {
+            if (!state.currentBranch().equals("master")) {
+                state.run("checkout", "master");
+            }
+            state.run("reset", masterTip);
+        }
+    }
+
+    /** An empty remote repository named "bench". */
+    @State(Scope.Thread)
+    public static class EmptyRemote {
+        Path remote;
+
+        @Setup(Level.Trial)
+        public void register(RepoState state) {
+            remote = state.root.resolveSibling(state.root.getFileName() + "-remote")
+                .resolve(".gitlet");
+            state.run("add-remote", "bench", remote.toString());
+        }
+
+        @Setup(Level.Invocation)
+        public void clear() throws IOException {
+            RepoState.delete(remote);
+            Files.createDirectories(remote.resolve("commits"));
+            Files.createDirectories(remote.resolve("blobs"));
+            Files.createDirectories(remote.resolve("refs").resolve("branches"));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            RepoState.delete(remote.getParent());
+        }
+    }
+
+    @Benchmark
+    public void add(RepoState state, ModifiedFile file) {
+        state.run("add", file.name);
+    }
+
+    @Benchmark
+    public void commit(RepoState state, StagedFile staged) {
+        state.run("commit", "benchmark commit");
+    }
+
+    @Benchmark
+    public void status(RepoState state) {
+        state.run("status");
+    }
+
+    @Benchmark
+    public void log(RepoState state) {
+        state.run("log");
+    }
+
+    @Benchmark
+    public void checkoutBranch(RepoState state, OtherBranch branch) {
+        state.run("checkout", branch.name);
+    }
+
+    @Benchmark
+    public void merge(RepoState state, UnmergedMaster master) {
+        state.run("merge", "bench-merge");
+    }
+
+    @Benchmark
+    public String findSplitPoint(RepoState state) {
+        return state.repo.findSplitPoint(state.tip("master"), state.tip("bench-merge"));
+    }
+
+    @Benchmark
+    public void push(RepoState state, EmptyRemote remote) {
+        state.run("push", "bench", "master");
+    }
+}
@@ -0,0 +1,76 @@
+package gitlet;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Runs every benchmark once, with its per-invocation setup, on a small
+ *  repository.  Repository fixes its paths when it is loaded, so this must
+ *  stay the only test class of the module: its JVM may build one RepoState
+ *  only. */
+class RepositoryBenchmarkTest {
+
+    private RepoState state;
+    private final RepositoryBenchmark bench = new RepositoryBenchmark();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        state = new RepoState();
+        state.files = 20;
+        state.commits = 10;
+        state.branches = 2;
+        state.fileSize = 256;
+        state.sizeDistribution = "pareto";
+        state.seed = 42;
+        state.setUp();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        state.tearDown();
+    }
+
+    @Test
+    void everyBenchmarkRuns() throws IOException {
+        String master = state.tip("master");
+        RepositoryBenchmark.ModifiedFile modified = new RepositoryBenchmark.ModifiedFile();
+        modified.modify(state);
+        bench.add(state, modified);
+        bench.commit(state, stagedFile());
+        assertNotEquals(master, state.tip("master"));
+
+        bench.status(state);
+        bench.log(state);
+        assertNotNull(bench.findSplitPoint(state));
+
+        RepositoryBenchmark.OtherBranch other = new RepositoryBenchmark.OtherBranch();
+        other.pick(state);
+        bench.checkoutBranch(state, other);
+        assertEquals("bench-merge", state.currentBranch());
+
+        RepositoryBenchmark.UnmergedMaster unmerged = new RepositoryBenchmark.UnmergedMaster();
+        unmerged.remember(state);
+        unmerged.reset(state);
+        bench.merge(state, unmerged);
+        assertNotEquals(unmerged.masterTip, state.tip("master"));
+
+        RepositoryBenchmark.EmptyRemote remote = new RepositoryBenchmark.EmptyRemote();
+        remote.register(state);
+        remote.clear();
+        bench.push(state, remote);
+        assertEquals(state.tip("master"),
+                Files.readString(remote.remote.resolve("refs/branches/master")).trim());
+        remote.tearDown();
+    }
+
+    private RepositoryBenchmark.StagedFile stagedFile() {
+        RepositoryBenchmark.StagedFile staged = new RepositoryBenchmark.StagedFile();
+        staged.stage(state);
+        return staged;
+    }
+}
@@ -0,0 +1,154 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static gitlet.Repository.COMMON_DIR;
+import static gitlet.Utils.*;
+
+/** Object stores of other repositories on the same host, borrowed
+ *  read-only.
+ *
+ *  .gitlet/alternates lists, one per line, the .gitlet directories of
+ *  other repositories.  A commit or blob missing from a repository's own
+ *  commits/ or blobs/ is looked for in each of these in turn, and in
+ *  their own alternates, so fetching from a repository that shares them
+ *  copies nothing, and pushing copies only what the remote cannot reach
+ *  either.  Nothing is ever written to an alternate.
+ *
+ *  "gitlet dissociate" copies in every borrowed object the repository's
+ *  branches need and removes the file.
+ */
+class Alternates {
+
+    static final String ALTERNATES_NAME = "alternates";
+    static final File ALTERNATES_FILE = join(COMMON_DIR, ALTERNATES_NAME);
+    /** Longest chain of alternates followed. */
+    private static final int MAX_DEPTH = 5;
+
+    /** The alternates of each .gitlet directory, once read.  Concurrent,
+     *  since fsck looks objects up from many threads. */
+    private static final Map<File, List<File>> cache = new ConcurrentHashMap<>();
+
+    /** Returns the file of commit COMMITID, here or in an alternate.  If
+     *  no repository has it, returns the (missing) file it would have
+     *  here. */
+    static File commitFile(String commitId) {
+        return find(COMMON_DIR, "commits", commitId);
+    }
+
+    /** Returns the file of blob BLOBID, as for commitFile(). */
+    static File blobFile(String blobId) {
+        return find(COMMON_DIR, "blobs", blobId);
+    }
+
+    /** Returns the file of object ID in directory KIND ("commits" or
+     *  "blobs") of the repository whose .gitlet directory is GITLETDIR, or
+     *  of one of its alternates.  If none has it, returns the (missing)
+     *  file in GITLETDIR. */
+    static File find(File gitletDir, String kind, String id) {
+        File own = Transaction.objectFile(join(gitletDir, kind, id));
+        if (own.exists()) {
+            return own;
+        }
+        File found = search(gitletDir, kind, id, 1, new HashSet<>());
+        return found != null ? found : own;
+    }
+
+    /** Returns true if the repository whose .gitlet directory is GITLETDIR
+     *  can read object ID of KIND, itself or through an alternate. */
+    static boolean has(File gitletDir, String kind, String id) {
+        return find(gitletDir, kind, id).exists();
+    }
+
+    /** Returns the .gitlet directory of this repository followed by every
+     *  alternate it can borrow from, directly or through other alternates,
+     *  nearest first. */
+    static List<File> stores() {
+        List<File> stores = new ArrayList<>(List.of(COMMON_DIR));
+        Set<File> seen = new HashSet<>(stores);
+        int level = 0;
+        for (int depth = 1; depth <= MAX_DEPTH && level < stores.size(); depth++) {
+            int end = stores.size();
+            for (; level < end; level++) {
+                for (File alternate : read(stores.get(level))) {
+                    if (seen.add(alternate)) {
+                        stores.add(alternate);
+                    }
+                }
+            }
+        }
+        return stores;
+    }
+
+    /** Returns the alternates of this repository, in file order. */
+    static List<File> list() {
+        return read(COMMON_DIR);
+    }
+
+    /** Add the repository whose .gitlet directory is GITLETDIR to this
+     *  repository's alternates. */
+    static void add(File gitletDir) {
+        Set<String> lines = new LinkedHashSet<>();
+        for (File dir : list()) {
+            lines.add(dir.getPath());
+        }
+        if (lines.add(gitletDir.getPath())) {
+            Transaction.writeRef(ALTERNATES_FILE, String.join("\n", lines) + "\n");
+        }
+        cache.remove(COMMON_DIR);
+    }
+
+    /** Stop borrowing objects: remove this repository's alternates file. */
+    static void clear() {
+        Transaction.deleteRef(ALTERNATES_FILE);
+        cache.remove(COMMON_DIR);
+    }
+
+    /** Forget the alternates read so far. */
+    static void forget() {
+        cache.clear();
+    }
+
+    /* HELPERS */
+
+    private static File search(File gitletDir, String kind, String id, int depth, Set<File> seen) {
+        if (depth > MAX_DEPTH || !seen.add(gitletDir)) {
+            return null;
+        }
+        for (File alternate : read(gitletDir)) {
+            File file = join(alternate, kind, id);
+            if (file.exists()) {
+                return file;
+            }
+        }
+        for (File alternate : read(gitletDir)) {
+            File found = search(alternate, kind, id, depth + 1, seen);
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    private static List<File> read(File gitletDir) {
+        return cache.computeIfAbsent(gitletDir, dir -> {
+            File file = join(dir, ALTERNATES_NAME);
+            List<File> dirs = new ArrayList<>();
+            if (Transaction.exists(file)) {
+                for (String line : readContentsAsString(file).lines().toList()) {
+                    if (!line.isBlank()) {
+                        dirs.add(new File(line.trim()));
+                    }
+                }
+            }
+            return dirs;
+        });
+    }
+}
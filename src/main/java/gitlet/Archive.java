@@ -0,0 +1,203 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static gitlet.Utils.*;
+
+/** Export of a commit's files as a tar or zip archive, for "gitlet
+ *  archive".
+ *
+ *  Entries are written straight from the object store to the output
+ *  stream, in file name order, and the working tree is never touched.  A
+ *  pool of reader threads loads blobs up to READ_AHEAD entries ahead of
+ *  the writer, so reading and decoding blobs overlaps with compressing
+ *  and writing them.  Only serialized blobs, all smaller than
+ *  Blob.MAP_THRESHOLD, are loaded: the readers merely size up raw ones,
+ *  whose contents the writer copies from the blob file to the output as
+ *  it goes.  Every entry gets the commit's timestamp as its modification
+ *  time.
+ *
+ *  Tar output is POSIX ustar: a 512-byte header per file, the contents
+ *  padded to a multiple of 512 bytes, and two zero blocks at the end.
+ */
+class Archive {
+
+    private static final int READERS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    /** Most blobs read but not yet written. */
+    private static final int READ_AHEAD = 4 * READERS;
+    private static final int BLOCK = 512;
+
+    /** Write the files of COMMIT to OUT as an archive in FORMAT, "tar" or
+     *  "zip". */
+    static void write(Commit commit, String format, OutputStream out) throws IOException {
+        List<Map.Entry<String, String>> entries = new ArrayList<>(commit.getBlobs().entrySet());
+        PromisorRemote.prefetch(commit.getBlobs().values());
+        long mtime = commitTime(commit);
+
+        ExecutorService readers = Executors.newFixedThreadPool(READERS, runnable -> {
+            Thread thread = new Thread(runnable, "archive-reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Deque<Future<Contents>> pending = new ArrayDeque<>();
+            int next = 0;
+            ZipOutputStream zip = format.equals("zip") ? new ZipOutputStream(out) : null;
+            for (Map.Entry<String, String> entry : entries) {
+                while (next < entries.size() && pending.size() < READ_AHEAD) {
+                    String blobId = entries.get(next++).getValue();
+                    pending.add(readers.submit(() -> new Contents(blobId)));
+                }
+                Contents contents = await(pending.poll());
+                if (zip != null) {
+                    ZipEntry zipEntry = new ZipEntry(entry.getKey());
+                    zipEntry.setTime(mtime * 1000);
+                    zip.putNextEntry(zipEntry);
+                    contents.writeTo(zip);
+                    zip.closeEntry();
+                } else {
+                    out.write(tarHeader(entry.getKey(), contents.size, mtime));
+                    contents.writeTo(out);
+                    out.write(new byte[padding(contents.size)]);
+                }
+                Trace.bytesWritten(contents.size);
+            }
+            if (zip != null) {
+                zip.finish();
+            } else {
+                out.write(new byte[2 * BLOCK]);
+            }
+            out.flush();
+        } finally {
+            readers.shutdownNow();
+        }
+    }
+
+    /** The contents of one blob: in memory if it is serialized, or left
+     *  in its blob file if it is stored raw. */
+    private static class Contents {
+        private final File rawFile;
+        private final byte[] bytes;
+        private final long size;
+
+        Contents(String blobId) {
+            File blobFile = Alternates.blobFile(blobId);
+            long rawSize = Blob.rawSize(blobFile);
+            if (rawSize >= 0) {
+                rawFile = blobFile;
+                bytes = null;
+                size = rawSize;
+            } else {
+                rawFile = null;
+                bytes = Blob.read(blobFile, blobId).getContents();
+                size = bytes.length;
+            }
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            if (bytes != null) {
+                out.write(bytes);
+            } else {
+                Blob.copyRaw(rawFile, out);
+            }
+        }
+    }
+
+    /* HELPERS */
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw new IllegalArgumentException(excp.getCause());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalArgumentException("interrupted while reading blobs");
+        }
+    }
+
+    /** Returns the ustar header of a regular file NAME of SIZE bytes,
+     *  modified at MTIME (in seconds). */
+    private static byte[] tarHeader(String name, long size, long mtime) {
+        byte[] header = new byte[BLOCK];
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int split = 0;
+        if (nameBytes.length > 100) {
+            // the leading directories go in the prefix field
+            int slash = nameBytes.length - 101;
+            while (slash < nameBytes.length && nameBytes[slash] != '/') {
+                slash += 1;
+            }
+            if (slash >= nameBytes.length || slash > 155) {
+                throw error("File name too long for tar: %s", name);
+            }
+            System.arraycopy(nameBytes, 0, header, 345, slash);
+            split = slash + 1;
+        }
+        System.arraycopy(nameBytes, split, header, 0, nameBytes.length - split);
+        octal(header, 100, 8, 0644);
+        octal(header, 108, 8, 0);
+        octal(header, 116, 8, 0);
+        octal(header, 124, 12, size);
+        octal(header, 136, 12, mtime);
+        header[156] = '0';
+        put(header, 257, "ustar\0" + "00");
+
+        // the checksum is taken with its own field filled with spaces
+        put(header, 148, "        ");
+        long sum = 0;
+        for (byte b : header) {
+            sum += b & 0xff;
+        }
+        octal(header, 148, 7, sum);
+        return header;
+    }
+
+    /** Write VALUE in octal, zero-padded and NUL-terminated, into the LEN
+     *  bytes of HEADER at OFFSET. */
+    private static void octal(byte[] header, int offset, int len, long value) {
+        String digits = Long.toOctalString(value);
+        if (digits.length() > len - 1) {
+            throw error("File too large for tar.");
+        }
+        put(header, offset, "0".repeat(len - 1 - digits.length()) + digits);
+        header[offset + len - 1] = 0;
+    }
+
+    private static void put(byte[] header, int offset, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, header, offset, bytes.length);
+    }
+
+    private static int padding(long size) {
+        return (int) ((BLOCK - size % BLOCK) % BLOCK);
+    }
+
+    /** Returns the time of COMMIT in seconds since the epoch. */
+    private static long commitTime(Commit commit) {
+        try {
+            return new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z").parse(commit.getTimestamp()).getTime() / 1000;
+        } catch (ParseException excp) {
+            return 0;
+        }
+    }
+}
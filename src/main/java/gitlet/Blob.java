@@ -1,17 +1,54 @@
 package gitlet;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import static gitlet.Utils.*;
 
 public class Blob implements Serializable {
+    private static final long serialVersionUID = 8651485329202951646L;
+
+    /** Blobs at least this large (in bytes) are stored raw instead of
+     *  serialized, and are written to the working tree from a memory-mapped
+     *  view of the blob file rather than through a copy on the heap.
+     *  Override with -Dgitlet.mapThreshold=BYTES. */
+    static final int MAP_THRESHOLD = Integer.getInteger("gitlet.mapThreshold", 1 << 20);
+    /** Header of a raw blob file, followed by the contents.  A serialized
+     *  blob starts with the stream magic 0xACED instead. */
+    private static final byte[] RAW_MAGIC = {'g', 'l', 'b', 0};
+
     private final String filename;
     private final byte[] contents;
     private final String id;
     public Blob(File file) {
+        GitletEvents.WorkingFileHash event = new GitletEvents.WorkingFileHash();
+        event.begin();
         this.filename = file.getName();
         this.contents = readContents(file);
         this.id = Utils.sha1((Object)contents);
+        if (event.shouldCommit()) {
+            event.path = file.getPath();
+            event.bytes = contents.length;
+            event.commit();
+        }
+    }
+
+    Blob(String filename, byte[] contents) {
+        this(filename, contents, Utils.sha1((Object)contents));
+    }
+
+    private Blob(String filename, byte[] contents, String id) {
+        this.filename = filename;
+        this.contents = contents;
+        this.id = id;
     }
 
     public byte[] getContents() {
@@ -23,11 +60,100 @@ public class Blob implements Serializable {
     }
 
     public void save() {
-        File blobFile = join(Repository.BLOBS_DIR, id);
-        writeObject(blobFile, this);
+        File blobFile = Alternates.blobFile(id);
+        if (contents.length >= MAP_THRESHOLD) {
+            Transaction.writeObjectContents(blobFile, RAW_MAGIC, contents);
+        } else {
+            Transaction.writeObject(blobFile, this);
+        }
     }
     public static Blob fromId(String blobId) {
-        File blobFile = join(Repository.BLOBS_DIR, blobId);
-        return readObject(blobFile, Blob.class);
+        PromisorRemote.ensure(blobId);
+        return read(Alternates.blobFile(blobId), blobId);
+    }
+
+    /** Returns blob BLOBID as stored in BLOBFILE, raw or serialized,
+     *  without checking its contents. */
+    static Blob read(File blobFile, String blobId) {
+        try (FileChannel channel = FileChannel.open(blobFile.toPath())) {
+            if (!isRaw(channel)) {
+                return readObject(blobFile, Blob.class);
+            }
+            byte[] contents = new byte[(int) (channel.size() - RAW_MAGIC.length)];
+            ByteBuffer buffer = ByteBuffer.wrap(contents);
+            while (buffer.hasRemaining()
+                   && channel.read(buffer, RAW_MAGIC.length + buffer.position()) >= 0) {
+                continue;
+            }
+            Trace.objectRead(channel.size());
+            return new Blob(null, contents, blobId);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Write the contents of blob BLOBID to FILE, creating its directory
+     *  if need be.  Raw blobs of at least MAP_THRESHOLD bytes are mapped and
+     *  written straight from the mapping, so they never occupy the heap. */
+    static void writeTo(String blobId, File file) {
+        PromisorRemote.ensure(blobId);
+        writeTo(Alternates.blobFile(blobId), blobId, file);
+    }
+
+    /** Write the contents of blob BLOBID, stored in BLOBFILE, to FILE, as
+     *  for writeTo(BLOBID, FILE). */
+    static void writeTo(File blobFile, String blobId, File file) {
+        file.getParentFile().mkdirs();
+        try (FileChannel in = FileChannel.open(blobFile.toPath())) {
+            long size = in.size() - RAW_MAGIC.length;
+            if (size < MAP_THRESHOLD || !isRaw(in)) {
+                writeContents(file, read(blobFile, blobId).getContents());
+                return;
+            }
+            MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, RAW_MAGIC.length, size);
+            try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (mapped.hasRemaining()) {
+                    out.write(mapped);
+                }
+            }
+            Trace.objectRead(in.size());
+            Trace.bytesWritten(size);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the size of the contents of the blob stored in BLOBFILE if
+     *  it is stored raw, or -1 if it is serialized. */
+    static long rawSize(File blobFile) {
+        try (FileChannel channel = FileChannel.open(blobFile.toPath())) {
+            return isRaw(channel) ? channel.size() - RAW_MAGIC.length : -1;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Copy the contents of the raw blob stored in BLOBFILE to OUT, from
+     *  the file channel, without holding them on the heap.  OUT is left
+     *  open. */
+    static void copyRaw(File blobFile, OutputStream out) throws IOException {
+        try (FileChannel in = FileChannel.open(blobFile.toPath())) {
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = RAW_MAGIC.length;
+            while (position < in.size()) {
+                position += in.transferTo(position, in.size() - position, target);
+            }
+            Trace.objectRead(in.size());
+        }
+    }
+
+    /** Returns true if the blob file open on CHANNEL is stored raw. */
+    private static boolean isRaw(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RAW_MAGIC.length);
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+            continue;
+        }
+        return Arrays.equals(header.array(), RAW_MAGIC);
     }
 }
@@ -0,0 +1,142 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+
+import static gitlet.Utils.*;
+
+/** A Bloom filter over the paths a commit changed relative to its first
+ *  parent, stored in .gitlet/bloom/COMMIT-ID next to the commit itself.
+ *
+ *  The filter also carries the commit's first parent and timestamp, so a
+ *  path-limited history walk can move from commit to commit reading only
+ *  these small files, and load and diff the blob maps of just the commits
+ *  whose filter might contain the path.  A false positive only costs that
+ *  diff; there are no false negatives.
+ *
+ *  Filters are written along with new commits, and computed and saved on
+ *  first use for commits that have none (older or fetched ones).  The
+ *  filter of a shallow boundary commit is only kept in memory: its parent
+ *  is not present, and a fetch that deepens the history would make a
+ *  saved one miss the paths the commit deleted.
+ */
+class ChangedPathFilter implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    static final File BLOOM_DIR = join(Repository.COMMON_DIR, "bloom");
+
+    /** Bits per changed path and number of hash functions: about a 1%
+     *  false-positive rate. */
+    private static final int BITS_PER_ENTRY = 10;
+    private static final int HASHES = 7;
+    /** Commits changing more paths than this get no filter at all, and
+     *  always have to be diffed. */
+    private static final int MAX_CHANGED_PATHS = 512;
+
+    private final String parent;
+    private final String timestamp;
+    /** The filter bits, or null if too many paths changed. */
+    private final long[] bits;
+
+    private ChangedPathFilter(Commit commit, Commit parentCommit) {
+        this.parent = commit.getParent();
+        this.timestamp = commit.getTimestamp();
+
+        TreeSet<String> changed = new TreeSet<>();
+        Map<String, String> blobs = commit.getBlobs();
+        Map<String, String> parentBlobs = parentCommit == null ? Map.of() : parentCommit.getBlobs();
+        for (String path : blobs.keySet()) {
+            if (!Objects.equals(blobs.get(path), parentBlobs.get(path))) {
+                changed.add(path);
+            }
+        }
+        for (String path : parentBlobs.keySet()) {
+            if (!blobs.containsKey(path)) {
+                changed.add(path);
+            }
+        }
+
+        if (changed.size() > MAX_CHANGED_PATHS) {
+            this.bits = null;
+        } else {
+            this.bits = new long[Math.max(1, (changed.size() * BITS_PER_ENTRY + 63) / 64)];
+            for (String path : changed) {
+                long hash = hash(path);
+                for (int i = 0; i < HASHES; i++) {
+                    int bit = index(hash, i);
+                    bits[bit >>> 6] |= 1L << bit;
+                }
+            }
+        }
+    }
+
+    /** Write the filter of COMMIT, whose id is COMMITID and whose first
+     *  parent is PARENTCOMMIT (null for the initial commit). */
+    static ChangedPathFilter write(String commitId, Commit commit, Commit parentCommit) {
+        ChangedPathFilter filter = new ChangedPathFilter(commit, parentCommit);
+        BLOOM_DIR.mkdir();
+        Transaction.writeObject(join(BLOOM_DIR, commitId), filter);
+        return filter;
+    }
+
+    /** Returns the filter of commit COMMITID, computing it if need be. */
+    static ChangedPathFilter forCommit(String commitId) {
+        File file = Transaction.objectFile(join(BLOOM_DIR, commitId));
+        if (file.exists()) {
+            return readObject(file, ChangedPathFilter.class);
+        }
+        Commit commit = readObject(Alternates.commitFile(commitId), Commit.class);
+        if (Shallow.isBoundary(commitId)) {
+            return new ChangedPathFilter(commit, null);
+        }
+        String parent = commit.getParent();
+        Commit parentCommit = parent == null ? null
+            : readObject(Alternates.commitFile(parent), Commit.class);
+        return write(commitId, commit, parentCommit);
+    }
+
+    /** Returns false if this commit certainly did not change PATH. */
+    boolean mightContain(String path) {
+        if (bits == null) {
+            return true;
+        }
+        long hash = hash(path);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = index(hash, i);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    String getParent() {
+        return parent;
+    }
+
+    String getTimestamp() {
+        return timestamp;
+    }
+
+    /** Returns the I-th bit position for a path hashing to HASH, by double
+     *  hashing on the two halves of HASH. */
+    private int index(long hash, int i) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        return Math.floorMod(h1 + i * h2, bits.length * 64);
+    }
+
+    /** 64-bit FNV-1a hash of the UTF-8 bytes of PATH. */
+    private static long hash(String path) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -9,6 +9,7 @@ import java.util.Map;
 import java.util.TreeMap;
 
 public class Commit implements Serializable {
+    private static final long serialVersionUID = 4250760980839010260L;
 
     private String message;
     private String timestamp;
@@ -32,6 +33,13 @@ public class Commit implements Serializable {
         this.secondParent = null;
         this.blobs = new TreeMap<>(blobs);
     }
+    Commit(String message, String timestamp, String parent, Map<String, String> blobs) {
+        this.message = message;
+        this.timestamp = timestamp;
+        this.parent = parent;
+        this.secondParent = null;
+        this.blobs = new TreeMap<>(blobs);
+    }
     private String getCurrentTimestamp() {
         SimpleDateFormat sdf = new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z");
         return sdf.format(new Date());
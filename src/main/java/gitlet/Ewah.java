@@ -0,0 +1,74 @@
+package gitlet;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/** Word-aligned run-length compression of bitmaps, after EWAH.
+ *
+ *  A compressed bitmap is a sequence of groups.  Each group starts with a
+ *  marker word holding, from the top: one bit giving the value of a run
+ *  of "clean" words (all zeros or all ones), 31 bits of run length, and 32
+ *  bits counting the literal ("dirty") words that follow the marker and
+ *  are copied verbatim.  Reachability bitmaps are mostly long runs, so
+ *  they shrink to a handful of words.
+ */
+class Ewah {
+
+    private static final long RUN_BIT = 1L << 63;
+    private static final long MAX_RUN = (1L << 31) - 1;
+    private static final long MAX_LITERALS = (1L << 32) - 1;
+
+    /** Returns BITS, compressed. */
+    static long[] compress(BitSet bits) {
+        long[] words = bits.toLongArray();
+        long[] out = new long[words.length + words.length / 2 + 2];
+        int size = 0;
+        int i = 0;
+        while (i < words.length) {
+            long runValue = words[i] == -1L ? -1L : 0L;
+            long run = 0;
+            while (i < words.length && run < MAX_RUN && words[i] == runValue) {
+                run += 1;
+                i += 1;
+            }
+            int literalStart = i;
+            long literals = 0;
+            while (i < words.length && literals < MAX_LITERALS
+                   && words[i] != 0L && words[i] != -1L) {
+                literals += 1;
+                i += 1;
+            }
+            if (size + 1 + literals > out.length) {
+                out = Arrays.copyOf(out, (int) (2 * out.length + literals + 1));
+            }
+            out[size++] = (runValue == -1L ? RUN_BIT : 0) | (run << 32) | literals;
+            System.arraycopy(words, literalStart, out, size, (int) literals);
+            size += (int) literals;
+        }
+        return Arrays.copyOf(out, size);
+    }
+
+    /** Returns the bitmap compressed in WORDS. */
+    static BitSet decompress(long[] words) {
+        int length = 0;
+        for (int i = 0; i < words.length; i += 1 + (int) (words[i] & MAX_LITERALS)) {
+            length += (int) ((words[i] >>> 32) & MAX_RUN) + (int) (words[i] & MAX_LITERALS);
+        }
+        long[] out = new long[length];
+        int size = 0;
+        int i = 0;
+        while (i < words.length) {
+            long marker = words[i++];
+            int run = (int) ((marker >>> 32) & MAX_RUN);
+            int literals = (int) (marker & MAX_LITERALS);
+            if ((marker & RUN_BIT) != 0) {
+                Arrays.fill(out, size, size + run, -1L);
+            }
+            size += run;
+            System.arraycopy(words, i, out, size, literals);
+            size += literals;
+            i += literals;
+        }
+        return BitSet.valueOf(out);
+    }
+}
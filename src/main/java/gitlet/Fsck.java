@@ -0,0 +1,172 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static gitlet.Repository.BLOBS_DIR;
+import static gitlet.Repository.COMMIT_DIR;
+import static gitlet.Repository.COMMON_DIR;
+import static gitlet.Utils.*;
+
+/** The integrity check run by "gitlet fsck".
+ *
+ *  Every object in the repository's own store is read back and checked:
+ *  a blob's contents must hash to its name, and a commit's name must be
+ *  re-derived from it by Repository.sha1Commit.  The parents and blobs a
+ *  commit refers to must be present, here or in an alternate, except the
+ *  parents of shallow boundary commits and, after a blobless fetch, blobs
+ *  a promisor remote has yet to supply.  Then every branch must point at a
+ *  valid commit and every working tree's HEAD at an existing branch.
+ *
+ *  Objects are checked in parallel on all cores.  Progress goes to
+ *  standard error when there is a terminal; each problem is printed on a
+ *  line of its own, followed by a one-line JSON summary such as
+ *      {"commits":301,"blobs":520,"branches":2,"promised":0,"errors":0}
+ */
+class Fsck {
+
+    /** Problems found so far, by the object they concern. */
+    private final Map<String, String> problems = new ConcurrentHashMap<>();
+    /** Blobs absent but promised by a promisor remote. */
+    private final Set<String> promised = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger done = new AtomicInteger();
+    private final boolean showProgress = System.console() != null;
+    private int total;
+    private int shownPercent = -1;
+
+    /** Check the repository and print the findings. */
+    static void run() {
+        new Fsck().check();
+    }
+
+    private void check() {
+        List<String> commitIds = names(COMMIT_DIR);
+        List<String> blobIds = names(BLOBS_DIR);
+        total = commitIds.size() + blobIds.size();
+        // read the boundary once, before the workers all want it
+        Shallow.isShallow();
+
+        Trace.begin("fsck.objects");
+        try {
+            blobIds.parallelStream().forEach(id -> {
+                checkBlob(id);
+                step();
+            });
+            commitIds.parallelStream().forEach(id -> {
+                checkCommit(id);
+                step();
+            });
+        } finally {
+            Trace.end();
+        }
+        if (showProgress) {
+            System.err.println();
+        }
+
+        Refs refs = new Refs(COMMON_DIR);
+        Map<String, String> branches = refs.all();
+        Trace.begin("fsck.refs");
+        try {
+            branches.forEach((name, commitId) -> {
+                if (!Alternates.commitFile(commitId).exists()) {
+                    problems.put("branch " + name, "branch " + name + ": missing commit " + commitId);
+                } else if (problems.containsKey(commitId)) {
+                    problems.put("branch " + name, "branch " + name + ": invalid commit " + commitId);
+                }
+            });
+            for (File gitletDir : Worktree.all()) {
+                String branchName = Worktree.branchOf(gitletDir);
+                if (!refs.exists(branchName)) {
+                    problems.put("HEAD " + gitletDir, "HEAD of " + gitletDir.getParent()
+                            + ": missing branch " + branchName);
+                }
+            }
+        } finally {
+            Trace.end();
+        }
+
+        List<String> lines = new ArrayList<>(problems.values());
+        lines.sort(null);
+        for (String line : lines) {
+            System.out.println(line);
+        }
+        System.out.printf("{\"commits\":%d,\"blobs\":%d,\"branches\":%d,\"promised\":%d,\"errors\":%d}%n",
+                commitIds.size(), blobIds.size(), branches.size(), promised.size(), lines.size());
+    }
+
+    /* HELPERS */
+
+    private void checkBlob(String blobId) {
+        try {
+            Blob blob = Blob.read(join(BLOBS_DIR, blobId), blobId);
+            String actual = sha1((Object) blob.getContents());
+            if (!actual.equals(blobId) || !blobId.equals(blob.getId())) {
+                problems.put(blobId, "blob " + blobId + ": contents hash to " + actual);
+            }
+        } catch (IllegalArgumentException excp) {
+            problems.put(blobId, "blob " + blobId + ": unreadable");
+        }
+    }
+
+    private void checkCommit(String commitId) {
+        Commit commit;
+        try {
+            commit = readObject(join(COMMIT_DIR, commitId), Commit.class);
+        } catch (IllegalArgumentException excp) {
+            problems.put(commitId, "commit " + commitId + ": unreadable");
+            return;
+        }
+        String actual = Repository.sha1Commit(commit);
+        if (!actual.equals(commitId)) {
+            problems.put(commitId, "commit " + commitId + ": hashes to " + actual);
+            return;
+        }
+        List<String> missing = new ArrayList<>();
+        if (!Shallow.isBoundary(commitId)) {
+            for (String parentId : new String[] {commit.getParent(), commit.getSecondParent()}) {
+                if (parentId != null && !Alternates.commitFile(parentId).exists()) {
+                    missing.add("parent " + parentId);
+                }
+            }
+        }
+        for (String blobId : commit.getBlobs().values()) {
+            if (Alternates.blobFile(blobId).exists()) {
+                continue;
+            }
+            if (PromisorRemote.isPartial() && !join(PromisorRemote.MISSING_DIR, blobId).exists()) {
+                promised.add(blobId);
+            } else {
+                missing.add("blob " + blobId);
+            }
+        }
+        if (!missing.isEmpty()) {
+            problems.put("refs " + commitId, "commit " + commitId + ": missing " + String.join(", ", missing));
+        }
+    }
+
+    /** Count one more object checked, and show the progress if it has
+     *  moved on by a percent. */
+    private void step() {
+        int count = done.incrementAndGet();
+        if (!showProgress) {
+            return;
+        }
+        int percent = (int) (100L * count / total);
+        synchronized (this) {
+            if (percent > shownPercent) {
+                shownPercent = percent;
+                System.err.printf("\rChecking objects: %d%% (%d/%d)", percent, count, total);
+            }
+        }
+    }
+
+    private static List<String> names(File dir) {
+        List<String> names = plainFilenamesIn(dir);
+        return names == null ? List.of() : names;
+    }
+}
@@ -0,0 +1,146 @@
+package gitlet;
+
+import java.io.File;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** Java Flight Recorder events for the object store and the working tree.
+ *
+ *  Every event is created, begun and, if shouldCommit() says so, filled in
+ *  and committed around the operation it describes.  With no recording
+ *  running shouldCommit() is false and the JIT removes the event
+ *  allocation, so the instrumentation costs next to nothing.  The settings
+ *  in gitlet.jfc, at the top of the source tree, enable all of them.  JFR
+ *  looks settings files up on the file system, and commands run in the
+ *  repository's working directory, so give its full path, e.g.
+ *      java -XX:StartFlightRecording:settings=/path/to/gitlet/gitlet.jfc,filename=rec.jfr gitlet.Main ...
+ */
+class GitletEvents {
+
+    /** Returns the kind of object stored in FILE: "commit", "blob",
+     *  "stage", or the name of its directory. */
+    static String kindOf(File file) {
+        File dir = file.getParentFile();
+        String name = dir == null ? "" : dir.getName();
+        switch (name) {
+            case "commits":
+                return "commit";
+            case "blobs":
+                return "blob";
+            case "stage":
+                return "stage";
+            default:
+                return name;
+        }
+    }
+
+    @Name("gitlet.ObjectRead")
+    @Label("Object Read")
+    @Description("Deserialization of an object from the object store")
+    @Category({"Gitlet", "Object Store"})
+    @StackTrace(false)
+    static class ObjectRead extends Event {
+        @Label("Id")
+        String id;
+
+        @Label("Kind")
+        String kind;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("gitlet.ObjectWrite")
+    @Label("Object Write")
+    @Description("Serialization of an object into the object store")
+    @Category({"Gitlet", "Object Store"})
+    @StackTrace(false)
+    static class ObjectWrite extends Event {
+        @Label("Id")
+        String id;
+
+        @Label("Kind")
+        String kind;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("gitlet.RefUpdate")
+    @Label("Ref Update")
+    @Description("Atomic replacement or deletion of a branch, HEAD, remote or stage file")
+    @Category({"Gitlet", "Object Store"})
+    @StackTrace(false)
+    static class RefUpdate extends Event {
+        @Label("Ref")
+        String ref;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+
+        @Label("Deleted")
+        boolean deleted;
+    }
+
+    @Name("gitlet.FileRead")
+    @Label("File Read")
+    @Description("Whole-file read through Utils.readContents")
+    @Category({"Gitlet", "Files"})
+    @StackTrace(false)
+    static class FileRead extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("gitlet.FileWrite")
+    @Label("File Write")
+    @Description("Whole-file write through Utils.writeContents")
+    @Category({"Gitlet", "Files"})
+    @StackTrace(false)
+    static class FileWrite extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("gitlet.Hash")
+    @Label("SHA-1")
+    @Description("SHA-1 computation in Utils.sha1")
+    @Category({"Gitlet", "Hashing"})
+    @StackTrace(false)
+    static class Hash extends Event {
+        @Label("Size")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("gitlet.WorkingFileHash")
+    @Label("Working File Hash")
+    @Description("Reading and hashing a working-tree file into a blob")
+    @Category({"Gitlet", "Hashing"})
+    @StackTrace(false)
+    static class WorkingFileHash extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+    }
+}
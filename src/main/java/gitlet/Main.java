@@ -1,22 +1,177 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static gitlet.Repository.COMMON_DIR;
 import static gitlet.Repository.GITLET_DIR;
+import static gitlet.Utils.*;
 
 public class Main {
     public static void main(String[] args) {
-        if (args.length == 0) {
-            System.out.println("Please enter a command.");
+        args = parseTraceOption(args);
+        if (args.length > 0) {
+            Trace.setCommand(args[0]);
+        }
+        try {
+            if (args.length > 0 && args[0].equals("batch")) {
+                runBatch(args);
+            } else {
+                run(new Repository(), args);
+            }
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
             System.exit(0);
         }
+    }
 
-        if (!GITLET_DIR.exists() && !args[0].equals("init")) {
-            System.out.println("Not in an initialized Gitlet directory.");
-            System.exit(0);
+    /** Run the command ARGS against REPO as one transaction, holding the
+     *  repository lock.  If the command fails with a user error, none of
+     *  its ref updates take place and the error is passed on. */
+    static void run(Repository repo, String[] args) {
+        if (args.length == 0) {
+            throw error("Please enter a command.");
+        }
+
+        if (!GITLET_DIR.exists() && !args[0].equals("init") && !args[0].equals("clone")) {
+            throw error("Not in an initialized Gitlet directory.");
         }
 
-        Repository repo = new Repository();
         String firstArg = args[0];
-        switch (firstArg) {
+        Trace.begin(firstArg);
+        try {
+            repo.resetCaches();
+            if (!firstArg.equals("init") && !firstArg.equals("watch") && !firstArg.equals("clone")) {
+                RepositoryLock.acquire(COMMON_DIR, isReadOnly(args));
+            }
+            Transaction.begin();
+            execute(repo, args);
+            Transaction.commit();
+        } catch (GitletException excp) {
+            Transaction.abort();
+            repo.resetCaches();
+            throw excp;
+        } finally {
+            RepositoryLock.releaseAll();
+            Trace.end();
+        }
+    }
+
+    /** Run the commands read from the file named by ARGS[1], or from the
+     *  standard input if there is none or it is "-", one per line, against
+     *  a single Repository.  Words are split as by a shell: double quotes
+     *  (with \" and \\ escapes) and single quotes group them, and lines
+     *  starting with "#" are comments.  A failing command prints its error
+     *  message and the batch goes on; the failures are listed on the
+     *  standard error at the end. */
+    private static void runBatch(String[] args) {
+        if (args.length > 2) {
+            throw error("Incorrect operands.");
+        }
+        BufferedReader in;
+        if (args.length == 1 || args[1].equals("-")) {
+            in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        } else if (new File(args[1]).isFile()) {
+            in = new BufferedReader(new InputStreamReader(readFile(args[1]), StandardCharsets.UTF_8));
+        } else {
+            throw error("File does not exist.");
+        }
+
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(new BufferedOutputStream(
+                new FileOutputStream(FileDescriptor.out), 1 << 16), false));
+        Repository repo = new Repository();
+        List<String> failures = new ArrayList<>();
+        try (in) {
+            int lineNumber = 0;
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                lineNumber += 1;
+                try {
+                    List<String> words = splitWords(line);
+                    if (words.isEmpty()) {
+                        continue;
+                    }
+                    if (words.get(0).equals("batch") || words.get(0).equals("watch")) {
+                        throw error("Cannot run %s in a batch.", words.get(0));
+                    }
+                    run(repo, words.toArray(new String[0]));
+                } catch (GitletException excp) {
+                    System.out.println(excp.getMessage());
+                    failures.add("line " + lineNumber + ": " + excp.getMessage());
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            System.out.flush();
+            System.setOut(stdout);
+        }
+        for (String failure : failures) {
+            System.err.println(failure);
+        }
+    }
+
+    /** Returns the words of LINE, split at whitespace outside of quotes. */
+    static List<String> splitWords(String line) {
+        List<String> words = new ArrayList<>();
+        if (line.strip().startsWith("#")) {
+            return words;
+        }
+        StringBuilder word = null;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quote == 0 && Character.isWhitespace(c)) {
+                if (word != null) {
+                    words.add(word.toString());
+                    word = null;
+                }
+                continue;
+            }
+            if (word == null) {
+                word = new StringBuilder();
+            }
+            if (quote == 0 && (c == '"' || c == '\'')) {
+                quote = c;
+            } else if (c == quote) {
+                quote = 0;
+            } else if (quote == '"' && c == '\\' && i + 1 < line.length()) {
+                word.append(line.charAt(++i));
+            } else {
+                word.append(c);
+            }
+        }
+        if (quote != 0) {
+            throw error("Unterminated quote.");
+        }
+        if (word != null) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    private static InputStream readFile(String name) {
+        try {
+            return new FileInputStream(name);
+        } catch (IOException excp) {
+            throw error("File does not exist.");
+        }
+    }
+
+    private static void execute(Repository repo, String[] args) {
+        switch (args[0]) {
             case "init":
                 validateNumArgs(args, 1);
                 repo.init();
@@ -30,8 +185,7 @@ public class Main {
                 repo.commit(args[1]);
                 break;
             case "log":
-                validateNumArgs(args, 1);
-                repo.log();
+                handleLog(repo, args);
                 break;
             case "global-log":
                 validateNumArgs(args, 1);
@@ -68,6 +222,22 @@ public class Main {
                 validateNumArgs(args, 2);
                 repo.merge(args[1]);
                 break;
+            case "cherry-pick":
+            case "rebase":
+                handleReplay(repo, args);
+                break;
+            case "clone":
+                validateNumArgs(args, 3);
+                repo.clone(args[1], args[2]);
+                break;
+            case "add-alternate":
+                validateNumArgs(args, 2);
+                repo.addAlternate(args[1]);
+                break;
+            case "dissociate":
+                validateNumArgs(args, 1);
+                repo.dissociate();
+                break;
             case "add-remote":
                 validateNumArgs(args, 3);
                 repo.addRemote(args[1], args[2]);
@@ -85,24 +255,213 @@ public class Main {
                 repo.initRemote(args[1]);
                 break;
             case "fetch":
-                validateNumArgs(args, 3);
-                repo.fetch(args[1], args[2]);
-                break;
             case "pull":
-                validateNumArgs(args, 3);
-                repo.pull(args[1], args[2]);
+                handleFetch(repo, args);
+                break;
+            case "sparse-checkout":
+                handleSparseCheckout(repo, args);
+                break;
+            case "worktree":
+                handleWorktree(repo, args);
+                break;
+            case "archive":
+                handleArchive(repo, args);
+                break;
+            case "count-objects":
+            case "stats":
+                if (args.length > 2 || (args.length == 2 && !args[1].equals("--json"))) {
+                    throw error("Incorrect operands.");
+                }
+                Stats.run(args[0].equals("stats"), args.length == 2);
+                break;
+            case "fsck":
+                validateNumArgs(args, 1);
+                Fsck.run();
                 break;
+            case "pack-refs":
+                validateNumArgs(args, 1);
+                repo.packRefs();
+                break;
+            case "write-bitmaps":
+                validateNumArgs(args, 1);
+                ReachabilityIndex.write();
+                break;
+            case "watch":
+                validateNumArgs(args, 1);
+                Watcher.run();
+                break;
+            default:
+                throw error("No command with that name exists.");
+        }
+    }
+
+    /** Turn on tracing if asked to by a leading --trace[=FILE] option or
+     *  the GITLET_TRACE environment variable, and return the remaining
+     *  arguments. */
+    private static String[] parseTraceOption(String[] args) {
+        String env = System.getenv("GITLET_TRACE");
+        if (env != null && !env.isEmpty()) {
+            Trace.enable(env);
+        }
+        if (args.length > 0 && (args[0].equals("--trace") || args[0].startsWith("--trace="))) {
+            Trace.enable(args[0].equals("--trace") ? "stderr" : args[0].substring("--trace=".length()));
+            return Arrays.copyOfRange(args, 1, args.length);
+        }
+        return args;
+    }
+
+    /** Returns true if the command ARGS only reads the repository, and may
+     *  run alongside other such commands.  The caches and lazily fetched
+     *  blobs these commands write do not count: RepositoryLock describes
+     *  how each is written so that readers may write them side by side. */
+    private static boolean isReadOnly(String[] args) {
+        switch (args[0]) {
+            case "log":
+            case "global-log":
+            case "find":
+            case "status":
+            case "fsck":
+            case "count-objects":
+            case "stats":
+            case "archive":
+                return true;
+            case "sparse-checkout":
+            case "worktree":
+                return args.length > 1 && args[1].equals("list");
             default:
-                System.out.println("No command with that name exists.");
-                System.exit(0);
+                return false;
         }
     }
 
     private static void validateNumArgs(String[] args, int expected) {
         if (args.length != expected) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw error("Incorrect operands.");
+        }
+    }
+
+    private static void handleLog(Repository repo, String[] args) {
+        String range = null;
+        String since = null;
+        String path = null;
+        int limit = -1;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--") && i + 2 == args.length) {
+                path = args[++i];
+            } else if (args[i].equals("-n") && i + 1 < args.length) {
+                try {
+                    limit = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException excp) {
+                    limit = -1;
+                }
+                if (limit < 0) {
+                    throw error("Incorrect operands.");
+                }
+            } else if (args[i].equals("--since") && i + 1 < args.length) {
+                since = args[++i];
+            } else if (range == null && !args[i].startsWith("-")) {
+                range = args[i];
+            } else {
+                throw error("Incorrect operands.");
+            }
         }
+        repo.log(range, limit, since, path);
+    }
+
+    private static void handleFetch(Repository repo, String[] args) {
+        int depth = -1;
+        boolean blobless = false;
+        List<String> operands = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--depth") && i + 1 < args.length) {
+                try {
+                    depth = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException excp) {
+                    depth = 0;
+                }
+                if (depth < 1) {
+                    throw error("Incorrect operands.");
+                }
+            } else if (args[i].equals("--filter=blob:none")) {
+                blobless = true;
+            } else {
+                operands.add(args[i]);
+            }
+        }
+        if (operands.size() != 2) {
+            throw error("Incorrect operands.");
+        }
+        if (args[0].equals("fetch")) {
+            repo.fetch(operands.get(0), operands.get(1), depth, blobless);
+        } else {
+            repo.pull(operands.get(0), operands.get(1), depth, blobless);
+        }
+    }
+
+    private static void handleReplay(Repository repo, String[] args) {
+        boolean checkout = true;
+        List<String> operands = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--no-checkout")) {
+                checkout = false;
+            } else {
+                operands.add(args[i]);
+            }
+        }
+        if (operands.size() != 1) {
+            throw error("Incorrect operands.");
+        }
+        if (args[0].equals("cherry-pick")) {
+            repo.cherryPick(operands.get(0), checkout);
+        } else {
+            repo.rebase(operands.get(0), checkout);
+        }
+    }
+
+    private static void handleSparseCheckout(Repository repo, String[] args) {
+        String sub = args.length > 1 ? args[1] : "";
+        List<String> patterns = Arrays.asList(args).subList(Math.min(2, args.length), args.length);
+        if (sub.equals("set") && !patterns.isEmpty()) {
+            repo.sparseCheckoutSet(patterns);
+        } else if (sub.equals("add") && !patterns.isEmpty()) {
+            repo.sparseCheckoutAdd(patterns);
+        } else if (sub.equals("list") && args.length == 2) {
+            repo.sparseCheckoutList();
+        } else if (sub.equals("disable") && args.length == 2) {
+            repo.sparseCheckoutDisable();
+        } else {
+            throw error("Incorrect operands.");
+        }
+    }
+
+    private static void handleWorktree(Repository repo, String[] args) {
+        if (args.length == 4 && args[1].equals("add")) {
+            repo.worktreeAdd(args[2], args[3]);
+        } else if (args.length == 2 && args[1].equals("list")) {
+            repo.worktreeList();
+        } else {
+            throw error("Incorrect operands.");
+        }
+    }
+
+    private static void handleArchive(Repository repo, String[] args) {
+        String format = "tar";
+        String output = null;
+        List<String> operands = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("--format=")) {
+                format = args[i].substring("--format=".length());
+            } else if (args[i].startsWith("--output=")) {
+                output = args[i].substring("--output=".length());
+            } else if (args[i].equals("-o") && i + 1 < args.length) {
+                output = args[++i];
+            } else {
+                operands.add(args[i]);
+            }
+        }
+        if (operands.size() != 1) {
+            throw error("Incorrect operands.");
+        }
+        repo.archive(operands.get(0), format, output);
     }
 
     private static void handleCheckout(Repository repo, String[] args) {
@@ -113,8 +472,7 @@ public class Main {
         } else if (args.length == 2) {
             repo.checkoutBranch(args[1]);
         } else {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw error("Incorrect operands.");
         }
     }
 }
@@ -0,0 +1,135 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static gitlet.Repository.BLOBS_DIR;
+import static gitlet.Repository.COMMON_DIR;
+import static gitlet.Repository.REMOTES_DIR;
+import static gitlet.Utils.*;
+
+/** Lazy blob fetching for repositories filled by a blobless fetch.
+ *
+ *  "fetch --filter=blob:none" copies commits but no blobs, and records the
+ *  remote in .gitlet/promisor as having promised the rest.  From then on
+ *  a blob that is not present locally is copied from a promisor remote
+ *  the first time it is needed: ensure() is called before every blob read,
+ *  and whole-commit checkouts call prefetch() first so the blobs come in
+ *  one batch.  A blob that no promisor remote has either is recorded in
+ *  .gitlet/missing, so that later reads fail without asking again, until
+ *  the next fetch forgets those records and lets the remotes be asked
+ *  once more.
+ */
+class PromisorRemote {
+
+    static final File PROMISOR_FILE = join(COMMON_DIR, "promisor");
+    static final File MISSING_DIR = join(COMMON_DIR, "missing");
+
+    /** Record REMOTENAME as a promisor remote. */
+    static void add(String remoteName) {
+        Set<String> remotes = new LinkedHashSet<>(names());
+        if (remotes.add(remoteName)) {
+            Transaction.writeRef(PROMISOR_FILE, String.join("\n", remotes) + "\n");
+        }
+    }
+
+    /** Returns true if blobs may be missing from this repository. */
+    static boolean isPartial() {
+        return Transaction.exists(PROMISOR_FILE);
+    }
+
+    /** Make sure blob BLOBID is present locally, fetching it if need be. */
+    static void ensure(String blobId) {
+        if (!isPartial() || Alternates.blobFile(blobId).exists()) {
+            return;
+        }
+        prefetch(List.of(blobId));
+    }
+
+    /** Fetch every blob in BLOBIDS that is not present locally, in one
+     *  pass over the promisor remotes. */
+    static void prefetch(Collection<String> blobIds) {
+        if (!isPartial()) {
+            return;
+        }
+        Set<String> wanted = new LinkedHashSet<>();
+        for (String blobId : blobIds) {
+            if (!Alternates.blobFile(blobId).exists()) {
+                wanted.add(blobId);
+            }
+        }
+        if (wanted.isEmpty()) {
+            return;
+        }
+        for (String blobId : wanted) {
+            if (Transaction.exists(join(MISSING_DIR, blobId))) {
+                throw missing(blobId);
+            }
+        }
+        Trace.begin("promisor.fetch");
+        try {
+            for (File remoteGitlet : remoteGitletDirs()) {
+                wanted.removeIf(blobId -> {
+                    File remoteBlob = Alternates.find(remoteGitlet, "blobs", blobId);
+                    if (!remoteBlob.exists()) {
+                        return false;
+                    }
+                    Transaction.writeObjectContents(join(BLOBS_DIR, blobId), readContents(remoteBlob));
+                    return true;
+                });
+            }
+        } finally {
+            Trace.end();
+        }
+        if (!wanted.isEmpty()) {
+            // Written outside the transaction, which the failing command
+            // rolls back: the record has to outlive it.
+            MISSING_DIR.mkdir();
+            for (String blobId : wanted) {
+                writeContents(join(MISSING_DIR, blobId), "");
+            }
+            throw missing(wanted.iterator().next());
+        }
+    }
+
+    /** Forget the blobs recorded as missing, so that the next read of
+     *  one asks the promisor remotes again.  Called by every fetch. */
+    static void forgetMissing() {
+        File[] markers = MISSING_DIR.listFiles();
+        if (markers == null) {
+            return;
+        }
+        for (File marker : markers) {
+            Transaction.deleteRef(marker);
+        }
+    }
+
+    /* HELPERS */
+
+    private static List<String> names() {
+        return isPartial() ? readContentsAsString(PROMISOR_FILE).lines().toList() : List.of();
+    }
+
+    /** Returns the .gitlet directories of the promisor remotes that are
+     *  still configured.  A blob is looked for in each of them and in its
+     *  alternates. */
+    private static List<File> remoteGitletDirs() {
+        List<File> dirs = new ArrayList<>();
+        for (String name : names()) {
+            File remoteFile = join(REMOTES_DIR, name);
+            if (Transaction.exists(remoteFile)) {
+                dirs.add(new File(readContentsAsString(remoteFile)));
+            }
+        }
+        return dirs;
+    }
+
+    private static GitletException missing(String blobId) {
+        return error("Blob %s is missing and no promisor remote has it;"
+                     + " fetch from a promisor remote to try again.", blobId);
+    }
+}
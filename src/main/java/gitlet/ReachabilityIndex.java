@@ -0,0 +1,251 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** Reachability bitmaps for answering "which objects are reachable from X
+ *  but not from Y" with bitwise operations instead of commit walks.
+ *
+ *  .gitlet/bitmaps/objects lists every indexed commit and blob.  It is
+ *  append-only, so an object's position in it never changes and a bitmap
+ *  over those positions stays valid forever.  .gitlet/bitmaps/COMMIT-ID is
+ *  the Ewah-compressed bitmap of all objects reachable from that commit.
+ *  "gitlet write-bitmaps" indexes any new objects and writes bitmaps for
+ *  the current branch tips.
+ *
+ *  Commits made since then are handled by walking from them until a
+ *  commit with a bitmap is reached; objects not in the index yet are kept
+ *  in plain sets next to the bitmap.
+ *
+ *  Bitmaps are only written for complete history.  Shallow.update
+ *  deletes them all if a commit ever leaves the shallow boundary.
+ */
+class ReachabilityIndex {
+
+    static final File BITMAPS_DIR = join(COMMON_DIR, "bitmaps");
+    static final File INDEX_FILE = join(BITMAPS_DIR, "objects");
+
+    /** Type tags of index entries. */
+    private static final byte COMMIT = 'c';
+    private static final byte BLOB = 'b';
+    /** Length of an entry: a type tag and a binary SHA-1. */
+    private static final int ENTRY_LENGTH = 1 + UID_LENGTH / 2;
+
+    /** Object ids by position. */
+    private final List<String> ids = new ArrayList<>();
+    /** Positions of commits. */
+    private final BitSet commits = new BitSet();
+    private final Map<String, Integer> positions = new HashMap<>();
+
+    /** The objects reachable from some set of commits. */
+    class Reach {
+        /** The indexed objects. */
+        final BitSet bits = new BitSet();
+        /** The objects not in the index. */
+        final Set<String> extra = new HashSet<>();
+
+        boolean contains(String id) {
+            Integer pos = positions.get(id);
+            return pos != null ? bits.get(pos) : extra.contains(id);
+        }
+
+        private void add(String id) {
+            Integer pos = positions.get(id);
+            if (pos != null) {
+                bits.set(pos);
+            } else {
+                extra.add(id);
+            }
+        }
+    }
+
+    /** Commits and blobs found by missing(). */
+    static class Delta {
+        final List<String> commits = new ArrayList<>();
+        final List<String> blobs = new ArrayList<>();
+    }
+
+    /** Returns the index of this repository, or null if write-bitmaps has
+     *  never been run. */
+    static ReachabilityIndex load() {
+        if (!INDEX_FILE.exists()) {
+            return null;
+        }
+        ReachabilityIndex index = new ReachabilityIndex();
+        byte[] entries = readContents(INDEX_FILE);
+        for (int i = 0; i + ENTRY_LENGTH <= entries.length; i += ENTRY_LENGTH) {
+            StringBuilder id = new StringBuilder(UID_LENGTH);
+            for (int j = i + 1; j < i + ENTRY_LENGTH; j++) {
+                id.append(Character.forDigit((entries[j] >> 4) & 0xf, 16))
+                    .append(Character.forDigit(entries[j] & 0xf, 16));
+            }
+            index.append(id.toString(), entries[i] == COMMIT);
+        }
+        return index;
+    }
+
+    /** Index every object not indexed yet and write bitmaps for all branch
+     *  tips that lack one.  A shallow repository gets none: a bitmap built
+     *  from its history would miss whatever a later fetch brings in below
+     *  the boundary. */
+    static void write() {
+        if (Shallow.isShallow()) {
+            throw error("Cannot write bitmaps in a shallow repository.");
+        }
+        ReachabilityIndex index = load();
+        if (index == null) {
+            index = new ReachabilityIndex();
+        }
+        BITMAPS_DIR.mkdir();
+        int before = index.ids.size();
+
+        // New objects go in the order a walk from the tips meets them, so
+        // that objects reachable together sit together and compress well.
+        List<String> tips = new ArrayList<>(new Refs(COMMON_DIR).all().values());
+        Deque<String> stack = new ArrayDeque<>(tips);
+        Set<String> visited = new HashSet<>();
+        while (!stack.isEmpty()) {
+            String id = stack.pop();
+            if (!visited.add(id) || index.positions.containsKey(id)) {
+                continue;
+            }
+            Commit commit = readObject(Alternates.commitFile(id), Commit.class);
+            index.append(id, true);
+            for (String blobId : new TreeSet<>(commit.getBlobs().values())) {
+                if (!index.positions.containsKey(blobId)) {
+                    index.append(blobId, false);
+                }
+            }
+            if (Shallow.secondParent(id, commit) != null) {
+                stack.push(commit.getSecondParent());
+            }
+            if (Shallow.parent(id, commit) != null) {
+                stack.push(commit.getParent());
+            }
+        }
+        for (String id : plainFilenamesIn(COMMIT_DIR)) {
+            if (!index.positions.containsKey(id)) {
+                index.append(id, true);
+            }
+        }
+        for (String id : plainFilenamesIn(BLOBS_DIR)) {
+            if (!index.positions.containsKey(id)) {
+                index.append(id, false);
+            }
+        }
+
+        if (index.ids.size() > before) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for (int pos = 0; pos < index.ids.size(); pos++) {
+                String id = index.ids.get(pos);
+                out.write(index.commits.get(pos) ? COMMIT : BLOB);
+                for (int i = 0; i < UID_LENGTH; i += 2) {
+                    out.write(Integer.parseInt(id.substring(i, i + 2), 16));
+                }
+            }
+            Transaction.writeRef(INDEX_FILE, out.toByteArray());
+        }
+
+        for (String tip : tips) {
+            if (!join(BITMAPS_DIR, tip).exists()) {
+                Reach reach = index.reach(List.of(tip));
+                Transaction.writeObject(join(BITMAPS_DIR, tip), Ewah.compress(reach.bits));
+            }
+        }
+    }
+
+    /** Returns true if commit COMMITID has a stored bitmap. */
+    static boolean hasBitmap(String commitId) {
+        return Transaction.objectFile(join(BITMAPS_DIR, commitId)).exists();
+    }
+
+    /** Delete the index and every bitmap. */
+    static void delete() {
+        List<String> names = plainFilenamesIn(BITMAPS_DIR);
+        if (names != null) {
+            for (String name : names) {
+                Transaction.deleteRef(join(BITMAPS_DIR, name));
+            }
+        }
+    }
+
+    /** Returns the objects reachable from any of COMMITIDS. */
+    Reach reach(Collection<String> commitIds) {
+        Reach reach = new Reach();
+        walk(commitIds, null, reach);
+        return reach;
+    }
+
+    /** Returns the commits and blobs reachable from WANT but not from any
+     *  of HAVE. */
+    Delta missing(String want, Collection<String> have) {
+        Reach haves = reach(have);
+        Reach wants = new Reach();
+        walk(List.of(want), haves, wants);
+
+        wants.bits.andNot(haves.bits);
+        Delta delta = new Delta();
+        for (int pos = wants.bits.nextSetBit(0); pos >= 0; pos = wants.bits.nextSetBit(pos + 1)) {
+            (commits.get(pos) ? delta.commits : delta.blobs).add(ids.get(pos));
+        }
+        for (String id : wants.extra) {
+            if (!haves.extra.contains(id)) {
+                (Alternates.commitFile(id).exists() ? delta.commits : delta.blobs).add(id);
+            }
+        }
+        return delta;
+    }
+
+    /** Add to REACH everything reachable from STARTS, without descending
+     *  into commits contained in STOP (if not null).  Stored bitmaps are
+     *  used in place of walking whenever there is one. */
+    private void walk(Collection<String> starts, Reach stop, Reach reach) {
+        Deque<String> stack = new ArrayDeque<>(starts);
+        Set<String> visited = new HashSet<>();
+        while (!stack.isEmpty()) {
+            String id = stack.pop();
+            if (!visited.add(id) || (stop != null && stop.contains(id))) {
+                continue;
+            }
+            if (hasBitmap(id)) {
+                File bitmap = Transaction.objectFile(join(BITMAPS_DIR, id));
+                reach.bits.or(Ewah.decompress(readObject(bitmap, long[].class)));
+                continue;
+            }
+            Commit commit = readObject(Alternates.commitFile(id), Commit.class);
+            reach.add(id);
+            for (String blobId : commit.getBlobs().values()) {
+                reach.add(blobId);
+            }
+            if (Shallow.parent(id, commit) != null) {
+                stack.push(commit.getParent());
+            }
+            if (Shallow.secondParent(id, commit) != null) {
+                stack.push(commit.getSecondParent());
+            }
+        }
+    }
+
+    private void append(String id, boolean isCommit) {
+        int pos = ids.size();
+        ids.add(id);
+        positions.put(id, pos);
+        if (isCommit) {
+            commits.set(pos);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static gitlet.Utils.*;
+
+/** The branches of a repository.
+ *
+ *  A branch is either a loose ref, the file refs/branches/NAME holding
+ *  its commit id, or a line "COMMIT-ID NAME" in refs/packed-refs.  The
+ *  packed file is sorted by name, so a branch is found by binary search
+ *  over a memory-mapped view of it, and listing the branches only needs
+ *  the (few) loose refs besides.  A loose ref overrides a packed one of
+ *  the same name: updating a branch always writes a loose ref, and
+ *  "gitlet pack-refs" moves all loose refs into the packed file.
+ *
+ *  All writes go through Transaction, and so does reading a loose ref.
+ */
+class Refs {
+
+    static final String PACKED_REFS_NAME = "packed-refs";
+
+    private final File branchesDir;
+    private final File packedFile;
+    /** Contents of the packed file, once read. */
+    private ByteBuffer packed;
+
+    /** The branches of the repository whose .gitlet directory is
+     *  GITLETDIR. */
+    Refs(File gitletDir) {
+        this.branchesDir = join(gitletDir, "refs", "branches");
+        this.packedFile = join(gitletDir, "refs", PACKED_REFS_NAME);
+    }
+
+    /** Returns the commit id of branch NAME, or null if there is none. */
+    String get(String name) {
+        File loose = join(branchesDir, name);
+        if (Transaction.exists(loose)) {
+            return readContentsAsString(loose);
+        }
+        return findPacked(name);
+    }
+
+    boolean exists(String name) {
+        return get(name) != null;
+    }
+
+    /** Point branch NAME at COMMITID. */
+    void set(String name, String commitId) {
+        Transaction.writeRef(join(branchesDir, name), commitId);
+    }
+
+    /** Delete branch NAME, loose and packed. */
+    void delete(String name) {
+        File loose = join(branchesDir, name);
+        if (Transaction.exists(loose)) {
+            Transaction.deleteRef(loose);
+        }
+        if (findPacked(name) != null) {
+            TreeMap<String, String> refs = readPacked();
+            refs.remove(name);
+            writePacked(refs);
+        }
+    }
+
+    /** Returns the names of all branches, sorted. */
+    TreeSet<String> names() {
+        TreeSet<String> names = new TreeSet<>(readPacked().keySet());
+        names.addAll(looseNames());
+        return names;
+    }
+
+    /** Returns the commit id of every branch, by name, sorted. */
+    TreeMap<String, String> all() {
+        TreeMap<String, String> refs = readPacked();
+        for (String name : looseNames()) {
+            refs.put(name, readContentsAsString(join(branchesDir, name)));
+        }
+        return refs;
+    }
+
+    /** Move every loose ref into the packed file. */
+    void pack() {
+        List<String> loose = looseNames();
+        if (loose.isEmpty()) {
+            return;
+        }
+        writePacked(all());
+        for (String name : loose) {
+            Transaction.deleteRef(join(branchesDir, name));
+        }
+    }
+
+    /** Forget the packed file read so far, which another process may have
+     *  changed since. */
+    void forget() {
+        packed = null;
+    }
+
+    /* HELPERS */
+
+    private List<String> looseNames() {
+        return Transaction.filenamesIn(branchesDir);
+    }
+
+    /** Returns the commit id of NAME in the packed file, or null. */
+    private String findPacked(String name) {
+        ByteBuffer buf = packed();
+        int lo = 0;
+        int hi = buf.limit();
+        while (lo < hi) {
+            int start = (lo + hi) >>> 1;
+            while (start > lo && buf.get(start - 1) != '\n') {
+                start -= 1;
+            }
+            int end = start;
+            while (end < buf.limit() && buf.get(end) != '\n') {
+                end += 1;
+            }
+            int cmp = name.compareTo(decode(buf, start + UID_LENGTH + 1, end));
+            if (cmp == 0) {
+                return decode(buf, start, start + UID_LENGTH);
+            } else if (cmp < 0) {
+                hi = start;
+            } else {
+                lo = end + 1;
+            }
+        }
+        return null;
+    }
+
+    private TreeMap<String, String> readPacked() {
+        TreeMap<String, String> refs = new TreeMap<>();
+        ByteBuffer buf = packed();
+        int start = 0;
+        while (start < buf.limit()) {
+            int end = start;
+            while (end < buf.limit() && buf.get(end) != '\n') {
+                end += 1;
+            }
+            refs.put(decode(buf, start + UID_LENGTH + 1, end), decode(buf, start, start + UID_LENGTH));
+            start = end + 1;
+        }
+        return refs;
+    }
+
+    private void writePacked(TreeMap<String, String> refs) {
+        if (refs.isEmpty()) {
+            Transaction.deleteRef(packedFile);
+        } else {
+            StringBuilder out = new StringBuilder();
+            refs.forEach((name, id) -> out.append(id).append(' ').append(name).append('\n'));
+            Transaction.writeRef(packedFile, out.toString());
+        }
+        packed = null;
+    }
+
+    private ByteBuffer packed() {
+        if (packed == null) {
+            if (!Transaction.exists(packedFile)) {
+                packed = ByteBuffer.allocate(0);
+            } else if (Transaction.pendingContents(packedFile) != null) {
+                packed = ByteBuffer.wrap(Transaction.pendingContents(packedFile));
+            } else {
+                try (FileChannel channel = FileChannel.open(packedFile.toPath())) {
+                    packed = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+        }
+        return packed;
+    }
+
+    private static String decode(ByteBuffer buf, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        buf.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
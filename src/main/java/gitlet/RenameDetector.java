@@ -0,0 +1,219 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/** Rename detection between two blob maps, for merge.
+ *
+ *  A path present only before is paired with a path present only after
+ *  if their contents are identical or similar enough.  Similarity is the
+ *  Jaccard similarity of the files' sets of shingles (pairs of adjacent
+ *  lines), estimated by MinHash: each file gets a signature of the
+ *  minimum of each of SIGNATURE_LENGTH hash functions over its shingles,
+ *  and the fraction of equal signature entries of two files estimates
+ *  their similarity.
+ *
+ *  Rather than comparing every deleted file with every added one, the
+ *  signatures are cut into BANDS bands of ROWS entries, and only files
+ *  agreeing on a whole band are compared (locality-sensitive hashing):
+ *  with 20 bands of 3, pairs at 50% similarity become candidates 93% of
+ *  the time, and pairs at 10% almost never.
+ */
+class RenameDetector {
+
+    private static final int BANDS = 20;
+    private static final int ROWS = 3;
+    private static final int SIGNATURE_LENGTH = BANDS * ROWS;
+    /** Least estimated similarity for a rename. */
+    private static final double MIN_SIMILARITY = 0.5;
+
+    /** Seeds of the MinHash hash functions. */
+    private static final long[] SEEDS = new long[SIGNATURE_LENGTH];
+
+    static {
+        long seed = 0x5eed;
+        for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+            seed += 0x9e3779b97f4a7c15L;
+            SEEDS[i] = mix(seed);
+        }
+    }
+
+    /** Returns the renames from BEFORE to AFTER (maps from path to blob
+     *  id), as a map from old path to new path. */
+    static Map<String, String> detect(Map<String, String> before, Map<String, String> after) {
+        Map<String, String> deleted = new TreeMap<>();
+        Map<String, String> added = new TreeMap<>();
+        before.forEach((path, id) -> {
+            if (!after.containsKey(path)) {
+                deleted.put(path, id);
+            }
+        });
+        after.forEach((path, id) -> {
+            if (!before.containsKey(path)) {
+                added.put(path, id);
+            }
+        });
+        Map<String, String> renames = new LinkedHashMap<>();
+        if (deleted.isEmpty() || added.isEmpty()) {
+            return renames;
+        }
+
+        // Identical contents first.
+        Map<String, List<String>> deletedById = new HashMap<>();
+        deleted.forEach((path, id) -> deletedById.computeIfAbsent(id, k -> new ArrayList<>()).add(path));
+        for (Map.Entry<String, String> entry : added.entrySet()) {
+            List<String> sources = deletedById.get(entry.getValue());
+            if (sources != null && !sources.isEmpty()) {
+                renames.put(sources.remove(0), entry.getKey());
+            }
+        }
+        deleted.keySet().removeAll(renames.keySet());
+        added.keySet().removeAll(renames.values());
+        if (deleted.isEmpty() || added.isEmpty()) {
+            return renames;
+        }
+
+        Map<String, long[]> deletedSigs = signatures(deleted);
+        Map<String, long[]> addedSigs = signatures(added);
+
+        // Bucket deleted files by band, then look added files up.
+        List<Map<Long, List<String>>> buckets = new ArrayList<>();
+        for (int band = 0; band < BANDS; band++) {
+            Map<Long, List<String>> bucket = new HashMap<>();
+            for (Map.Entry<String, long[]> entry : deletedSigs.entrySet()) {
+                bucket.computeIfAbsent(bandHash(entry.getValue(), band), k -> new ArrayList<>())
+                    .add(entry.getKey());
+            }
+            buckets.add(bucket);
+        }
+        List<Candidate> candidates = new ArrayList<>();
+        for (Map.Entry<String, long[]> entry : addedSigs.entrySet()) {
+            Set<String> seen = new HashSet<>();
+            for (int band = 0; band < BANDS; band++) {
+                List<String> sources = buckets.get(band).get(bandHash(entry.getValue(), band));
+                if (sources == null) {
+                    continue;
+                }
+                for (String source : sources) {
+                    if (seen.add(source)) {
+                        double similarity = similarity(deletedSigs.get(source), entry.getValue());
+                        if (similarity >= MIN_SIMILARITY) {
+                            candidates.add(new Candidate(source, entry.getKey(), similarity));
+                        }
+                    }
+                }
+            }
+        }
+
+        // Most similar pairs first; each path takes part in one rename.
+        candidates.sort((a, b) -> a.similarity != b.similarity
+            ? Double.compare(b.similarity, a.similarity)
+            : (a.from + '\0' + a.to).compareTo(b.from + '\0' + b.to));
+        Set<String> used = new HashSet<>();
+        for (Candidate candidate : candidates) {
+            if (!renames.containsKey(candidate.from) && used.add(candidate.to)) {
+                renames.put(candidate.from, candidate.to);
+            }
+        }
+        return renames;
+    }
+
+    /* HELPERS */
+
+    private static class Candidate {
+        final String from;
+        final String to;
+        final double similarity;
+
+        Candidate(String from, String to, double similarity) {
+            this.from = from;
+            this.to = to;
+            this.similarity = similarity;
+        }
+    }
+
+    /** Returns the MinHash signature of each non-empty blob in FILES. */
+    private static Map<String, long[]> signatures(Map<String, String> files) {
+        Map<String, long[]> signatures = new TreeMap<>();
+        for (Map.Entry<String, String> entry : files.entrySet()) {
+            long[] shingles = shingles(Blob.fromId(entry.getValue()).getContents());
+            if (shingles.length == 0) {
+                continue;
+            }
+            long[] signature = new long[SIGNATURE_LENGTH];
+            Arrays.fill(signature, Long.MAX_VALUE);
+            for (long shingle : shingles) {
+                for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+                    long h = mix(shingle ^ SEEDS[i]);
+                    if (h < signature[i]) {
+                        signature[i] = h;
+                    }
+                }
+            }
+            signatures.put(entry.getKey(), signature);
+        }
+        return signatures;
+    }
+
+    /** Returns the distinct hashes of the pairs of adjacent lines of
+     *  CONTENTS (or of its single line). */
+    private static long[] shingles(byte[] contents) {
+        List<Long> lines = new ArrayList<>();
+        long hash = 0xcbf29ce484222325L;
+        boolean inLine = false;
+        for (byte b : contents) {
+            if (b == '\n') {
+                lines.add(hash);
+                hash = 0xcbf29ce484222325L;
+                inLine = false;
+            } else {
+                hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+                inLine = true;
+            }
+        }
+        if (inLine) {
+            lines.add(hash);
+        }
+        Set<Long> shingles = new HashSet<>();
+        if (lines.size() == 1) {
+            shingles.add(lines.get(0));
+        }
+        for (int i = 0; i + 1 < lines.size(); i++) {
+            shingles.add(lines.get(i) * 31 + mix(lines.get(i + 1)));
+        }
+        return shingles.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static long bandHash(long[] signature, int band) {
+        long hash = band;
+        for (int i = band * ROWS; i < (band + 1) * ROWS; i++) {
+            hash = mix(hash ^ signature[i]);
+        }
+        return hash;
+    }
+
+    /** Returns the fraction of equal entries of signatures A and B. */
+    private static double similarity(long[] a, long[] b) {
+        int same = 0;
+        for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+            if (a[i] == b[i]) {
+                same += 1;
+            }
+        }
+        return (double) same / SIGNATURE_LENGTH;
+    }
+
+    /** The SplitMix64 finalizer. */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,250 @@
+package gitlet;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** Builds a synthetic repository in the current directory by writing
+ *  commits, blobs, branches and the stage straight to the object store,
+ *  without going through one Main invocation per command.  Invoke as
+ *      java gitlet.RepoGenerator [--NAME=VALUE]...
+ *  with any of the options below.  The same options always produce the
+ *  same repository, down to the commit ids.
+ *
+ *      files          number of paths in every commit (default 100)
+ *      commits        first-parent depth of master (default 1000)
+ *      changes        files rewritten by each commit (default 10)
+ *      mergeEvery     merge a side branch into master every this many
+ *                     commits, 0 for linear history (default 0)
+ *      sideLength     commits on each merged side branch (default 3)
+ *      branches       extra branches, spread evenly over master (default 0)
+ *      fileSize       mean file size in bytes (default 1024)
+ *      distribution   file sizes: fixed, uniform or pareto (default fixed)
+ *      seed           random seed (default 42)
+ *      checkout       write master's files to the working tree (default true)
+ */
+public class RepoGenerator {
+
+    int files = 100;
+    int commits = 1000;
+    int changes = 10;
+    int mergeEvery = 0;
+    int sideLength = 3;
+    int branches = 0;
+    int fileSize = 1024;
+    String distribution = "fixed";
+    long seed = 42;
+    boolean checkout = true;
+
+    /** Number of commits written between two transaction commits. */
+    private static final int BATCH = 1000;
+
+    private Random random;
+    private long clock;
+    private int written;
+    private int blobsWritten;
+    private final SimpleDateFormat dateFormat =
+        new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z");
+
+    public static void main(String... args) {
+        RepoGenerator generator = new RepoGenerator();
+        try {
+            for (String arg : args) {
+                generator.setOption(arg);
+            }
+            generator.generate();
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+            System.exit(0);
+        }
+        System.out.printf("Generated %d commits, %d blobs and %d branches.%n",
+                generator.written, generator.blobsWritten, generator.branches + 1);
+    }
+
+    /** Set the option given as --NAME=VALUE in ARG. */
+    void setOption(String arg) {
+        int eq = arg.indexOf('=');
+        if (!arg.startsWith("--") || eq < 0) {
+            throw error("Incorrect operands.");
+        }
+        String name = arg.substring(2, eq);
+        String value = arg.substring(eq + 1);
+        try {
+            switch (name) {
+                case "files": files = Integer.parseInt(value); break;
+                case "commits": commits = Integer.parseInt(value); break;
+                case "changes": changes = Integer.parseInt(value); break;
+                case "mergeEvery": mergeEvery = Integer.parseInt(value); break;
+                case "sideLength": sideLength = Integer.parseInt(value); break;
+                case "branches": branches = Integer.parseInt(value); break;
+                case "fileSize": fileSize = Integer.parseInt(value); break;
+                case "distribution": distribution = value; break;
+                case "seed": seed = Long.parseLong(value); break;
+                case "checkout": checkout = Boolean.parseBoolean(value); break;
+                default:
+                    throw error("Unknown option %s.", name);
+            }
+        } catch (NumberFormatException excp) {
+            throw error("Incorrect operands.");
+        }
+    }
+
+    /** Create .gitlet in the current directory and fill it, holding the
+     *  repository lock, as one transaction per BATCH commits. */
+    void generate() {
+        if (GITLET_DIR.exists()) {
+            throw error("A Gitlet version-control system already exists in the current directory.");
+        }
+        GITLET_DIR.mkdir();
+        RepositoryLock.acquire(GITLET_DIR, false);
+        Transaction.begin();
+        try {
+            fill();
+            Transaction.commit();
+        } catch (GitletException excp) {
+            Transaction.abort();
+            throw excp;
+        } finally {
+            RepositoryLock.releaseAll();
+        }
+    }
+
+    private void fill() {
+        random = new Random(seed);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        clock = 0;
+
+        COMMIT_DIR.mkdir();
+        BLOBS_DIR.mkdir();
+        REFS_DIR.mkdir();
+        BRANCHES_DIR.mkdir();
+        STAGE_DIR.mkdir();
+        REMOTES_DIR.mkdir();
+
+        Refs refs = new Refs(GITLET_DIR);
+        Map<String, String> blobs = new TreeMap<>();
+        String tip = writeCommit(new Commit(), null);
+        for (int i = 0; i < files; i++) {
+            blobs.put(fileName(i), writeBlob(fileName(i)));
+        }
+        tip = writeCommit(new Commit("synthetic commit 0", timestamp(), tip, blobs), null);
+
+        int branchEvery = branches == 0 ? 0 : Math.max(1, commits / branches);
+        int branchesMade = 0;
+        for (int c = 1; c < commits; c++) {
+            if (mergeEvery > 0 && c % mergeEvery == 0) {
+                tip = mergeSideBranch(tip, blobs, c);
+            } else {
+                changeFiles(blobs);
+                tip = writeCommit(new Commit("synthetic commit " + c, timestamp(), tip, blobs), null);
+            }
+            if (branchEvery > 0 && branchesMade < branches && c % branchEvery == 0) {
+                refs.set("branch-" + branchesMade++, tip);
+            }
+        }
+        while (branchesMade < branches) {
+            refs.set("branch-" + branchesMade++, tip);
+        }
+
+        refs.set("master", tip);
+        Transaction.writeRef(HEAD_FILE, "master");
+        Transaction.writeRef(join(STAGE_DIR, "stage.ser"), serialize(new Stage()));
+        if (checkout) {
+            for (Map.Entry<String, String> entry : blobs.entrySet()) {
+                writeContents(join(CWD, entry.getKey()),
+                        Blob.fromId(entry.getValue()).getContents());
+            }
+        }
+    }
+
+    /** Returns fresh random contents whose size follows DISTRIBUTION. */
+    byte[] nextContents() {
+        int size;
+        switch (distribution) {
+            case "uniform":
+                size = 1 + random.nextInt(2 * fileSize);
+                break;
+            case "pareto":
+                // shape 1.5 has mean 3x the scale, so scale by fileSize / 3
+                double scale = fileSize / 3.0;
+                size = (int) Math.min(100.0 * fileSize,
+                        scale / Math.pow(1 - random.nextDouble(), 1 / 1.5));
+                break;
+            default:
+                size = fileSize;
+        }
+        byte[] contents = new byte[Math.max(1, size)];
+        for (int i = 0; i < contents.length; i++) {
+            contents[i] = (byte) (i % 64 == 63 ? '\n' : 'a' + random.nextInt(26));
+        }
+        return contents;
+    }
+
+    /** Returns the name of a random one of the generated files. */
+    String randomFile() {
+        return fileName(random.nextInt(files));
+    }
+
+    static String fileName(int i) {
+        return String.format("file%06d.txt", i);
+    }
+
+    /** Branch off TIP, make sideLength commits on the side and one on
+     *  master, and return the id of the commit merging them.  BLOBS ends
+     *  up as the merged file map. */
+    private String mergeSideBranch(String tip, Map<String, String> blobs, int c) {
+        Map<String, String> side = new HashMap<>(blobs);
+        String sideTip = tip;
+        for (int s = 0; s < sideLength; s++) {
+            changeFiles(side);
+            sideTip = writeCommit(new Commit("side commit " + c + "." + s, timestamp(), sideTip, side), null);
+        }
+        changeFiles(blobs);
+        String mainTip = writeCommit(new Commit("synthetic commit " + c, timestamp(), tip, blobs), null);
+        blobs.putAll(side);
+        return writeCommit(new Commit("Merged side-" + c + " into master.", timestamp(), mainTip, blobs), sideTip);
+    }
+
+    private void changeFiles(Map<String, String> blobs) {
+        for (int i = 0; i < Math.min(changes, files); i++) {
+            String name = randomFile();
+            blobs.put(name, writeBlob(name));
+        }
+    }
+
+    private String writeBlob(String name) {
+        Blob blob = new Blob(name, nextContents());
+        blob.save();
+        blobsWritten += 1;
+        return blob.getId();
+    }
+
+    private String writeCommit(Commit commit, String secondParent) {
+        commit.setSecondParent(secondParent);
+        String id = Repository.sha1Commit(commit);
+        Transaction.writeObject(join(COMMIT_DIR, id), commit);
+        // as Repository does for every commit, so log -- PATH finds them
+        Commit parent = commit.getParent() == null ? null
+            : readObject(Transaction.objectFile(join(COMMIT_DIR, commit.getParent())), Commit.class);
+        ChangedPathFilter.write(id, commit, parent);
+        written += 1;
+        if (written % BATCH == 0) {
+            Transaction.commit();
+            Transaction.begin();
+        }
+        return id;
+    }
+
+    private String timestamp() {
+        clock += 60;
+        return dateFormat.format(new Date(clock * 1000));
+    }
+}
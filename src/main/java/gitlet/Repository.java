@@ -1,8 +1,19 @@
 package gitlet;
 
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.*;
 
 import static gitlet.Utils.*;
@@ -18,20 +29,40 @@ public class Repository {
      * The .gitlet directory.
      */
     public static final File GITLET_DIR = join(CWD, ".gitlet");
-    public static final File COMMIT_DIR = join(GITLET_DIR, "commits");
-    public static final File BLOBS_DIR = join(GITLET_DIR, "blobs");
-    public static final File REFS_DIR = join(GITLET_DIR, "refs");
+    /**
+     * The .gitlet directory holding the commits, blobs and branches: GITLET_DIR
+     * itself, or the main working tree's for a linked working tree (see Worktree).
+     */
+    public static final File COMMON_DIR = commonDir(GITLET_DIR);
+    public static final File COMMIT_DIR = join(COMMON_DIR, "commits");
+    public static final File BLOBS_DIR = join(COMMON_DIR, "blobs");
+    public static final File REFS_DIR = join(COMMON_DIR, "refs");
     public static final File BRANCHES_DIR = join(REFS_DIR, "branches");
     public static final File STAGE_DIR = join(GITLET_DIR, "stage");
-    public static final File HEAD_FILE = join(REFS_DIR, "HEAD");
-    public static final File REMOTES_DIR = join(GITLET_DIR, "remotes");
+    public static final File HEAD_FILE = join(GITLET_DIR, "refs", "HEAD");
+    public static final File REMOTES_DIR = join(COMMON_DIR, "remotes");
     public static final File GITLET_REMOTE_DIR=join(CWD,".gitlet-remote");
 
+    /** Most commits kept in commitCache. */
+    private static final int COMMIT_CACHE_SIZE = 4096;
+
+    /** Commits read so far, by id.  Commits never change, so this is kept
+     *  across the commands of a batch. */
+    private final Map<String, Commit> commitCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Commit> eldest) {
+            return size() > COMMIT_CACHE_SIZE;
+        }
+    };
+    /** The stage as last read or saved by the current command, or null. */
+    private Stage stageCache;
+    /** The branches of this repository. */
+    private final Refs refs = new Refs(COMMON_DIR);
+
     /* TODO: fill in the rest of this class. */
     public void init() {
         if (GITLET_DIR.exists()) {
-            System.out.println("A Gitlet version-control system already exists in the current directory.");
-            System.exit(0);
+            throw error("A Gitlet version-control system already exists in the current directory.");
         }
 
         // Create Initial commit and save it in refs/heads/master
@@ -43,14 +74,11 @@ public class Repository {
         STAGE_DIR.mkdir();
         REMOTES_DIR.mkdir();
         Commit initCommit = new Commit();
-        String commitId = sha1Commit(initCommit);
+        String commitId = writeCommit(initCommit, null);
 
-        File commitFile = join(COMMIT_DIR, commitId);
-        writeObject(commitFile, initCommit);
         //Save branch "master" pointing to initial commit
-        File masterBranch = join(BRANCHES_DIR, "master");
-        writeContents(masterBranch, commitId);
-        writeContents(HEAD_FILE, "master");
+        refs.set("master", commitId);
+        Transaction.writeRef(HEAD_FILE, "master");
 
     }
     public void initRemote(String path) {
@@ -65,14 +93,12 @@ public class Repository {
         File headFile = Utils.join(remoteGitlet, "HEAD");
 
         if (remoteGitlet.exists()) {
-            System.out.println("A Gitlet version-control system already exists in the remote directory.");
-            System.exit(0);
+            throw error("A Gitlet version-control system already exists in the remote directory.");
         }
 
         // Ensure .gitlet root exists
         if (!remoteGitlet.mkdirs()) {
-            System.out.println("Failed to create remote .gitlet directory.");
-            System.exit(0);
+            throw error("Failed to create remote .gitlet directory.");
         }
 
         // Now create subdirectories
@@ -85,62 +111,70 @@ public class Repository {
 
         // Check all critical subdirs
         if (!commits.exists() || !branches.exists() || !blobs.exists()) {
-            System.out.println("Remote structure failed to initialize.");
-            System.exit(0);
+            throw error("Remote structure failed to initialize.");
         }
 
         // Write initial commit and refs
         Commit initCommit = new Commit();
         String id = sha1Commit(initCommit);
-        Utils.writeObject(Utils.join(commits, id), initCommit);
-        Utils.writeContents(Utils.join(branches, "master"), id);
-        Utils.writeContents(headFile, "master");
+        Transaction.writeObject(Utils.join(commits, id), initCommit);
+        Transaction.writeRef(Utils.join(branches, "master"), id);
+        Transaction.writeRef(headFile, "master");
     }
 
 
 
 
     public void add(String fileName) {
-        File file = join(CWD, fileName);
-        if (!file.isFile()) {
-            System.out.println("File does not exist.");
-            System.exit(0);
+        String path = workingPath(fileName);
+        File file = join(CWD, path);
+        List<String> files;
+        if (file.isFile()) {
+            files = List.of(path);
+        } else if (file.isDirectory()) {
+            TreeWalker.Rules rules = TreeWalker.Rules.load();
+            if (!path.isEmpty() && rules.excludes(path, true)) {
+                throw error("That directory is ignored.");
+            }
+            files = TreeWalker.list(path, rules);
+        } else {
+            throw error("File does not exist.");
         }
 
-        Blob blob = new Blob(file);
+        Map<String, String> tracked = getHeadCommit().getBlobs();
+        Stage stage = getStage();
+        for (String name : files) {
+            stageFile(name, tracked, stage);
+        }
+        saveStage(stage);
+    }
+
+    //helper function for staging one working file PATH for addition
+    private void stageFile(String path, Map<String, String> tracked, Stage stage) {
+        Blob blob = new Blob(join(CWD, path));
         String blobId = blob.getId();
         blob.save();
 
-        Commit head = getHeadCommit();
-        Map<String, String> tracked = head.getBlobs();
-        String trackedBlobId = tracked.get(fileName);
-
-        Stage stage = getStage();
-
-        if (blobId.equals(trackedBlobId)) {
+        if (blobId.equals(tracked.get(path))) {
             // already tracked and unchanged, remove from stage
-            stage.additionMap.remove(fileName);
-            stage.removalSet.remove(fileName);
-            saveStage(stage);
+            stage.additionMap.remove(path);
+            stage.removalSet.remove(path);
             return;
         }
 
-        stage.additionMap.put(fileName, blobId);
-        stage.removalSet.remove(fileName);
-        saveStage(stage);
+        stage.additionMap.put(path, blobId);
+        stage.removalSet.remove(path);
     }
 
     public void commit(String message) {
         if (message == null || message.trim().equals("")) {
-            System.out.println("Please enter a commit message.");
-            System.exit(0);
+            throw error("Please enter a commit message.");
         }
 
         Stage stage = getStage();
         Commit parent = getHeadCommit();
         if (stage.additionMap.isEmpty() && stage.removalSet.isEmpty()) {
-            System.out.println("No changes added to the commit.");
-            System.exit(0);
+            throw error("No changes added to the commit.");
         }
 
         Map<String, String> newBlobs = new HashMap<>(parent.getBlobs());
@@ -151,13 +185,12 @@ public class Repository {
             newBlobs.put(addedFile.getKey(), addedFile.getValue());
         }
 
-        String parentId = readContentsAsString(join(BRANCHES_DIR, readContentsAsString(HEAD_FILE)));
+        String parentId = getHeadCommitId();
         Commit newCommit = new Commit(message, parentId, newBlobs);
-        String newCommitId = sha1Commit(newCommit);
-        writeObject(join(COMMIT_DIR, newCommitId), newCommit);
+        String newCommitId = writeCommit(newCommit, parent);
 
         String currentBranch = readContentsAsString(HEAD_FILE);
-        writeContents(join(BRANCHES_DIR, currentBranch), newCommitId);
+        refs.set(currentBranch, newCommitId);
 
         stage.clear();
         saveStage(stage);
@@ -165,19 +198,72 @@ public class Repository {
 
     //print log
     public void log() {
-        Commit commit = getHeadCommit();
-        while (commit != null) {
-            printCommitInfo(commit);
-            commit = commit.getParent() == null ? null : readCommit(commit.getParent());
+        log(null, -1, null, null);
+    }
+
+    /** Print the first-parent history selected by RANGE, which is null
+     *  (from HEAD), a branch or commit id, or FROM..TO (the commits from TO
+     *  down to, but not including, FROM; either side defaults to HEAD and
+     *  the root respectively).  Stops after LIMIT commits unless LIMIT is
+     *  negative, and at the first commit older than SINCE unless SINCE is
+     *  null.  FROM should be a first-parent ancestor of TO; otherwise only
+     *  LIMIT and SINCE end the walk early.  If PATH is not null, only
+     *  commits that changed PATH relative to their first parent are shown
+     *  (and counted towards LIMIT); commits whose changed-path filter rules
+     *  PATH out are stepped over without reading them. */
+    public void log(String range, int limit, String since, String path) {
+        String fromId = null;
+        String toId;
+        if (range == null) {
+            toId = getHeadCommitId();
+        } else if (range.contains("..")) {
+            String from = range.substring(0, range.indexOf(".."));
+            String to = range.substring(range.indexOf("..") + 2);
+            fromId = from.isEmpty() ? null : resolveRevision(from);
+            toId = to.isEmpty() ? getHeadCommitId() : resolveRevision(to);
+        } else {
+            toId = resolveRevision(range);
+        }
+        Date sinceDate = since == null ? null : parseDate(since);
+        if (path != null) {
+            path = workingPath(path);
+        }
+
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out)));
+        int shown = 0;
+        String id = toId;
+        while (id != null && !id.equals(fromId) && (limit < 0 || shown < limit)) {
+            if (path != null) {
+                ChangedPathFilter filter = ChangedPathFilter.forCommit(id);
+                if (sinceDate != null && parseDate(filter.getTimestamp()).before(sinceDate)) {
+                    break;
+                }
+                if (!filter.mightContain(path)) {
+                    id = Shallow.isBoundary(id) ? null : filter.getParent();
+                    continue;
+                }
+            }
+            Commit commit = readCommit(id);
+            if (sinceDate != null && parseDate(commit.getTimestamp()).before(sinceDate)) {
+                break;
+            }
+            if (path == null || changesPath(id, commit, path)) {
+                printCommitInfo(out, id, commit);
+                shown += 1;
+            }
+            id = Shallow.parent(id, commit);
         }
+        out.flush();
     }
 
     //print global log
     public void globalLog() {
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out)));
         for (File file : COMMIT_DIR.listFiles()) {
             Commit commit = readObject(file, Commit.class);
-            printCommitInfo(commit);
+            printCommitInfo(out, file.getName(), commit);
         }
+        out.flush();
     }
 
     public void checkoutFile(String fileName) {
@@ -188,87 +274,92 @@ public class Repository {
     public void checkoutFileFromCommit(String commitId, String fileName) {
         String fullCommitId = expandCommitId(commitId);
         if (fullCommitId == null) {
-            System.out.println("No commit with that id exists.");
-            System.exit(0);
+            throw error("No commit with that id exists.");
         }
-        Commit commit = readObject(join(COMMIT_DIR, fullCommitId), Commit.class);
+        Commit commit = readCommit(fullCommitId);
         restoreFileFromCommit(commit, fileName);
     }
 
     public void checkoutBranch(String branchName) {
-        File branchFile = join(BRANCHES_DIR, branchName);
-        if (!branchFile.exists()) {
-            System.out.println("No such branch exists.");
-            System.exit(0);
+        String commitId = refs.get(branchName);
+        if (commitId == null) {
+            throw error("No such branch exists.");
         }
 
         String currentBranch = readContentsAsString(HEAD_FILE);
         if (branchName.equals(currentBranch)) {
-            System.out.println("No need to checkout the current branch.");
-            System.exit(0);
+            throw error("No need to checkout the current branch.");
+        }
+        if (Worktree.checkedOutElsewhere(branchName) != null) {
+            throw error("That branch is checked out in another working tree.");
         }
 
-        String commitId = readContentsAsString(branchFile);
-        Commit targetCommit = readObject(join(COMMIT_DIR, commitId), Commit.class);
+        Commit targetCommit = readCommit(commitId);
         Commit headCommit = getHeadCommit();
 
-        checkUntrackedFiles(headCommit, targetCommit);
-
-        for (String fileName : CWD.list()) {
-            if (!targetCommit.getBlobs().containsKey(fileName)) {
-                restrictedDelete(join(CWD, fileName));
-            }
+        Trace.begin("checkout.checkUntrackedFiles");
+        try {
+            checkUntrackedFiles(headCommit, targetCommit);
+        } finally {
+            Trace.end();
         }
 
-        for (Map.Entry<String, String> entry : targetCommit.getBlobs().entrySet()) {
-            String fileName = entry.getKey();
-            String blobId = entry.getValue();
-            Blob blob = readObject(join(BLOBS_DIR, blobId), Blob.class);
-            writeContents(join(CWD, fileName), blob.getContents());
+        Trace.begin("checkout.writeWorkingTree");
+        try {
+            SparseCheckout sparse = SparseCheckout.load();
+            prefetchBlobs(targetCommit, sparse);
+            deleteTrackedFiles(headCommit, targetCommit, sparse);
+
+            for (Map.Entry<String, String> entry : targetCommit.getBlobs().entrySet()) {
+                String fileName = entry.getKey();
+                String blobId = entry.getValue();
+                if (sparse.includes(fileName)) {
+                    Blob.writeTo(blobId, join(CWD, fileName));
+                }
+            }
+        } finally {
+            Trace.end();
         }
 
-        writeContents(HEAD_FILE, branchName);
+        Transaction.writeRef(HEAD_FILE, branchName);
     }
 
     public void createBranch(String name) {
-        File branchFile = join(BRANCHES_DIR, name);
-        if (branchFile.exists()) {
-            System.out.println("A branch with that name already exsits");
-            System.exit(0);
+        if (refs.exists(name)) {
+            throw error("A branch with that name already exsits");
         }
-        String commitId = readContentsAsString(join(BRANCHES_DIR, readContentsAsString(HEAD_FILE)));
-        writeContents(branchFile, commitId);
+        refs.set(name, getHeadCommitId());
 
     }
 
     public void removeBranch(String branchName) {
         if (readContentsAsString(HEAD_FILE).equals(branchName)) {
-            System.out.println("Cannot remove the current branch.");
-            System.exit(0);
+            throw error("Cannot remove the current branch.");
+        }
+        if (Worktree.checkedOutElsewhere(branchName) != null) {
+            throw error("That branch is checked out in another working tree.");
         }
-        File branchFile = join(BRANCHES_DIR, branchName);
-        if (!branchFile.exists()) {
-            System.out.println("A branch with that name does not exist.");
-            System.exit(0);
+        if (!refs.exists(branchName)) {
+            throw error("A branch with that name does not exist.");
         }
-        branchFile.delete();
+        refs.delete(branchName);
     }
 
     public void remove(String fileName) {
+        fileName = workingPath(fileName);
         Stage stage = getStage();
         Commit head = getHeadCommit();
         Map<String, String> tracked = head.getBlobs();
 
         if (!tracked.containsKey(fileName) && !stage.additionMap.containsKey(fileName)) {
-            System.out.println("No reason to remove the file.");
-            System.exit(0);
+            throw error("No reason to remove the file.");
         }
 
         if (stage.additionMap.containsKey(fileName)) {
             stage.additionMap.remove(fileName);
         }
         if (tracked.containsKey(fileName)) {
-            restrictedDelete(join(CWD, fileName));
+            deleteWorkingFile(fileName);
             stage.removalSet.add(fileName);
         }
         saveStage(stage);
@@ -294,12 +385,7 @@ public class Repository {
 
         // === Branches ===
         System.out.println("=== Branches ===");
-        List<String> branches = new ArrayList<>();
-        for (File file : BRANCHES_DIR.listFiles()) {
-            branches.add(file.getName());
-        }
-        Collections.sort(branches);
-        for (String branchName : branches) {
+        for (String branchName : refs.names()) {
             if (branchName.equals(currentBranch)) {
                 System.out.println("*" + branchName);
             } else {
@@ -327,41 +413,59 @@ public class Repository {
 
         // === Modifications Not Staged For Commit ===
         System.out.println("=== Modifications Not Staged For Commit ===");
-        printModificationsNotStaged();
+        Trace.begin("status.modifications");
+        try {
+            printModificationsNotStaged();
+        } finally {
+            Trace.end();
+        }
         System.out.println();
 
         // === Untracked Files ===
         System.out.println("=== Untracked Files ===");
-        printUntrackedFiles();
+        Trace.begin("status.untracked");
+        try {
+            printUntrackedFiles();
+        } finally {
+            Trace.end();
+        }
     }
 
-    public void reset(String commitId) {
-        File commitFile = join(COMMIT_DIR, commitId);
-        if (!commitFile.exists()) {
-            System.out.println("No commit with that id exists.");
-            System.exit(0);
+    public void reset(String shortId) {
+        String commitId = expandCommitId(shortId);
+        if (commitId == null) {
+            throw error("No commit with that id exists.");
         }
 
         Commit resetCommit = readCommit(commitId);
         Commit headCommit = getHeadCommit();
 
-        checkUntrackedFiles(headCommit, resetCommit);
-
-        for (String fileName : CWD.list()) {
-            if (!resetCommit.getBlobs().containsKey(fileName)) {
-                restrictedDelete(join(CWD, fileName));
-            }
+        Trace.begin("reset.checkUntrackedFiles");
+        try {
+            checkUntrackedFiles(headCommit, resetCommit);
+        } finally {
+            Trace.end();
         }
 
-        for (Map.Entry<String, String> entry : resetCommit.getBlobs().entrySet()) {
-            String fileName = entry.getKey();
-            String blobId = entry.getValue();
-            Blob blob = readObject(join(BLOBS_DIR, blobId), Blob.class);
-            writeContents(join(CWD, fileName), blob.getContents());
+        Trace.begin("reset.writeWorkingTree");
+        try {
+            SparseCheckout sparse = SparseCheckout.load();
+            prefetchBlobs(resetCommit, sparse);
+            deleteTrackedFiles(headCommit, resetCommit, sparse);
+
+            for (Map.Entry<String, String> entry : resetCommit.getBlobs().entrySet()) {
+                String fileName = entry.getKey();
+                String blobId = entry.getValue();
+                if (sparse.includes(fileName)) {
+                    Blob.writeTo(blobId, join(CWD, fileName));
+                }
+            }
+        } finally {
+            Trace.end();
         }
 
         String branchName = readContentsAsString(HEAD_FILE);
-        writeContents(join(BRANCHES_DIR, branchName), commitId);
+        refs.set(branchName, commitId);
 
         Stage stage = getStage();
         stage.clear();
@@ -371,31 +475,42 @@ public class Repository {
     public void merge(String branchName) {
         String currentBranch = readContentsAsString(HEAD_FILE);
         if (currentBranch.equals(branchName)) {
-            System.out.println("Cannot merge a branch with itself.");
-            System.exit(0);
+            throw error("Cannot merge a branch with itself.");
         }
 
-        File branchFile = join(BRANCHES_DIR, branchName);
-        if (!branchFile.exists()) {
-            System.out.println("A branch with that name does not exist.");
-            System.exit(0);
+        String givenCommitId = refs.get(branchName);
+        if (givenCommitId == null) {
+            throw error("A branch with that name does not exist.");
         }
 
         Stage stage = getStage();
         if (!stage.additionMap.isEmpty() || !stage.removalSet.isEmpty()) {
-            System.out.println("You have uncommitted changes.");
-            System.exit(0);
+            throw error("You have uncommitted changes.");
         }
 
         Commit headCommit = getHeadCommit();
-        Commit givenCommit = readCommit(readContentsAsString(branchFile));
+        Commit givenCommit = readCommit(givenCommitId);
 
-        checkUntrackedFiles(headCommit, givenCommit);
+        Trace.begin("merge.checkUntrackedFiles");
+        try {
+            checkUntrackedFiles(headCommit, givenCommit);
+        } finally {
+            Trace.end();
+        }
 
-        String currentCommitId = readContentsAsString(join(BRANCHES_DIR, currentBranch));
-        String givenCommitId = readContentsAsString(join(BRANCHES_DIR, branchName));
-        String splitCommitId = findSplitPoint(currentCommitId, givenCommitId);
+        String currentCommitId = refs.get(currentBranch);
+        String splitCommitId;
+        Trace.begin("merge.findSplitPoint");
+        try {
+            splitCommitId = findSplitPoint(currentCommitId, givenCommitId);
+        } finally {
+            Trace.end();
+        }
 
+        if (splitCommitId == null) {
+            // the shallow history holds no common ancestor
+            throw error("No common ancestor; fetch more history first.");
+        }
         if (splitCommitId.equals(givenCommitId)) {
             System.out.println("Given branch is an ancestor of the current branch.");
             return;
@@ -406,16 +521,26 @@ public class Repository {
             return;
         }
 
-        boolean hasConflict = mergeFiles(splitCommitId, currentCommitId, givenCommitId);
+        boolean hasConflict;
+        Trace.begin("merge.mergeFiles");
+        try {
+            hasConflict = mergeFiles(splitCommitId, currentCommitId, givenCommitId);
+        } finally {
+            Trace.end();
+        }
 
         Map<String, String> newBlobs = new HashMap<>();
-        for (String fileName : plainFilenamesIn(CWD)) {
-            File file = join(CWD, fileName);
-            byte[] fileContent = readContents(file);
-            String blobId = sha1(fileContent);
-            Blob blob = new Blob(file);  // 注意只传 File
-            writeObject(join(BLOBS_DIR, blobId), blob);
-            newBlobs.put(fileName, blobId);
+        Trace.begin("merge.writeBlobs");
+        try {
+            // mergeFiles staged every result, files outside the sparse
+            // patterns included; untracked working files stay out of the
+            // merge commit.
+            Stage merged = getStage();
+            newBlobs.putAll(headCommit.getBlobs());
+            newBlobs.putAll(merged.additionMap);
+            newBlobs.keySet().removeAll(merged.removalSet);
+        } finally {
+            Trace.end();
         }
 
         Commit mergedCommit = new Commit(
@@ -425,9 +550,8 @@ public class Repository {
         );
         mergedCommit.setSecondParent(givenCommitId);
 
-        String mergedCommitId = sha1Commit(mergedCommit);
-        writeObject(join(COMMIT_DIR, mergedCommitId), mergedCommit);
-        writeContents(join(BRANCHES_DIR, currentBranch), mergedCommitId);
+        String mergedCommitId = writeCommit(mergedCommit, headCommit);
+        refs.set(currentBranch, mergedCommitId);
 
         stage.clear();
         saveStage(stage);
@@ -437,30 +561,359 @@ public class Repository {
         }
     }
 
+    /** Apply the changes of the commit named REVISION on top of the head
+     *  commit, as a new commit.  The working tree is updated once, after the
+     *  new commit is made, and not at all unless CHECKOUT. */
+    public void cherryPick(String revision, boolean checkout) {
+        Stage stage = getStage();
+        if (!stage.additionMap.isEmpty() || !stage.removalSet.isEmpty()) {
+            throw error("You have uncommitted changes.");
+        }
+
+        String commitId = resolveRevision(revision);
+        String headCommitId = getHeadCommitId();
+        String newCommitId;
+        Trace.begin("cherry-pick.replay");
+        try {
+            newCommitId = replayCommit(commitId, headCommitId);
+        } finally {
+            Trace.end();
+        }
+        if (newCommitId.equals(headCommitId)) {
+            System.out.println("No changes to apply.");
+            return;
+        }
+        advanceHead(headCommitId, newCommitId, checkout);
+    }
+
+    /** Replay the commits of the current branch since it split from branch
+     *  BRANCHNAME on top of that branch, oldest first, and point the current
+     *  branch at the result.  Each commit is merged in memory; the working
+     *  tree is updated once at the end, and not at all unless CHECKOUT. */
+    public void rebase(String branchName, boolean checkout) {
+        String currentBranch = readContentsAsString(HEAD_FILE);
+        if (currentBranch.equals(branchName)) {
+            throw error("Cannot rebase a branch onto itself.");
+        }
+        String ontoId = refs.get(branchName);
+        if (ontoId == null) {
+            throw error("A branch with that name does not exist.");
+        }
+        Stage stage = getStage();
+        if (!stage.additionMap.isEmpty() || !stage.removalSet.isEmpty()) {
+            throw error("You have uncommitted changes.");
+        }
+
+        String headCommitId = getHeadCommitId();
+        String splitCommitId;
+        Trace.begin("rebase.findSplitPoint");
+        try {
+            splitCommitId = findSplitPoint(headCommitId, ontoId);
+        } finally {
+            Trace.end();
+        }
+        if (splitCommitId == null) {
+            throw error("No common ancestor; fetch more history first.");
+        }
+        if (splitCommitId.equals(ontoId)) {
+            System.out.println("Current branch is up to date.");
+            return;
+        }
+        if (splitCommitId.equals(headCommitId)) {
+            advanceHead(headCommitId, ontoId, checkout);
+            System.out.println("Current branch fast-forwarded.");
+            return;
+        }
+
+        // Collect the first-parent commits ONTO lacks, to replay them
+        // oldest first.
+        Set<String> ontoAncestors = ancestors(ontoId);
+        LinkedList<String> toReplay = new LinkedList<>();
+        for (String id = headCommitId; id != null && !ontoAncestors.contains(id);
+             id = Shallow.parent(id, readCommit(id))) {
+            toReplay.addFirst(id);
+        }
+
+        String tipId = ontoId;
+        Trace.begin("rebase.replay");
+        try {
+            for (String commitId : toReplay) {
+                tipId = replayCommit(commitId, tipId);
+            }
+        } finally {
+            Trace.end();
+        }
+        advanceHead(headCommitId, tipId, checkout);
+    }
+
+    public void sparseCheckoutSet(List<String> patterns) {
+        SparseCheckout.parse(patterns).save();
+        applySparseCheckout();
+    }
+
+    public void sparseCheckoutAdd(List<String> patterns) {
+        List<String> all = new ArrayList<>(SparseCheckout.load().getPatterns());
+        all.addAll(patterns);
+        SparseCheckout.parse(all).save();
+        applySparseCheckout();
+    }
+
+    public void sparseCheckoutList() {
+        SparseCheckout sparse = SparseCheckout.load();
+        if (!sparse.isEnabled()) {
+            System.out.println("Sparse checkout is not enabled.");
+            return;
+        }
+        for (String pattern : sparse.getPatterns()) {
+            System.out.println(pattern);
+        }
+    }
+
+    public void sparseCheckoutDisable() {
+        Transaction.deleteRef(SparseCheckout.SPARSE_FILE);
+        applySparseCheckout();
+    }
+
+    //helper function for bringing the working tree in line with new sparse-checkout patterns
+    private void applySparseCheckout() {
+        SparseCheckout sparse = SparseCheckout.load();
+        Stage stage = getStage();
+        for (Map.Entry<String, String> entry : getHeadCommit().getBlobs().entrySet()) {
+            String fileName = entry.getKey();
+            File file = join(CWD, fileName);
+            if (sparse.includes(fileName)) {
+                if (!file.exists() && !stage.removalSet.contains(fileName)) {
+                    Blob.writeTo(entry.getValue(), file);
+                }
+            } else if (file.isFile() && !stage.additionMap.containsKey(fileName)
+                    && new Blob(file).getId().equals(entry.getValue())) {
+                // a file with local changes stays in the working tree
+                deleteWorkingFile(fileName);
+            }
+        }
+    }
+
+    public void packRefs() {
+        refs.pack();
+    }
+
+    /** Create a linked working tree at PATH with branch BRANCHNAME checked
+     *  out, sharing this repository's commits, blobs and branches. */
+    public void worktreeAdd(String path, String branchName) {
+        String commitId = refs.get(branchName);
+        if (commitId == null) {
+            throw error("A branch with that name does not exist.");
+        }
+        if (readContentsAsString(HEAD_FILE).equals(branchName)
+                || Worktree.checkedOutElsewhere(branchName) != null) {
+            throw error("That branch is already checked out in a working tree.");
+        }
+        File root = new File(path).getAbsoluteFile();
+        String[] existing = root.list();
+        if (root.exists() && (existing == null || existing.length > 0)) {
+            throw error("%s already exists.", path);
+        }
+
+        File worktreeGitlet = join(root, ".gitlet");
+        join(worktreeGitlet, "refs").mkdirs();
+        join(worktreeGitlet, "stage").mkdir();
+        Transaction.writeRef(join(worktreeGitlet, Worktree.COMMONDIR_NAME),
+                Worktree.canonical(COMMON_DIR).getPath());
+        Transaction.writeRef(join(worktreeGitlet, "refs", "HEAD"), branchName);
+        Worktree.register(worktreeGitlet);
+
+        Trace.begin("worktree.writeWorkingTree");
+        try {
+            Commit commit = readCommit(commitId);
+            PromisorRemote.prefetch(commit.getBlobs().values());
+            for (Map.Entry<String, String> entry : commit.getBlobs().entrySet()) {
+                Blob.writeTo(entry.getValue(), join(root, entry.getKey()));
+            }
+        } finally {
+            Trace.end();
+        }
+    }
+
+    public void worktreeList() {
+        for (File dir : Worktree.all()) {
+            String branchName = Worktree.branchOf(dir);
+            String commitId = refs.get(branchName);
+            System.out.println(Worktree.canonical(dir.getParentFile()).getPath() + " "
+                    + (commitId == null ? "0000000" : commitId.substring(0, 7)) + " [" + branchName + "]");
+        }
+    }
+
+    /** Borrow the objects of the repository at PATH (its working directory
+     *  or its .gitlet directory) instead of copying them. */
+    public void addAlternate(String path) {
+        File dir = new File(path).getAbsoluteFile();
+        if (!dir.getName().equals(".gitlet")) {
+            dir = join(dir, ".gitlet");
+        }
+        if (!join(dir, "commits").isDirectory() || !join(dir, "blobs").isDirectory()) {
+            throw error("No repository found at %s.", path);
+        }
+        dir = Worktree.canonical(dir);
+        if (dir.equals(Worktree.canonical(COMMON_DIR))) {
+            throw error("A repository cannot borrow from itself.");
+        }
+        Alternates.add(dir);
+    }
+
+    /** Copy in every borrowed object that a branch or the stage needs, and
+     *  stop borrowing. */
+    public void dissociate() {
+        if (Alternates.list().isEmpty()) {
+            return;
+        }
+        Trace.begin("dissociate.copyObjects");
+        try {
+            Set<String> visited = new HashSet<>();
+            Deque<String> stack = new ArrayDeque<>(refs.all().values());
+            while (!stack.isEmpty()) {
+                String commitId = stack.pop();
+                if (!visited.add(commitId)) {
+                    continue;
+                }
+                borrow(join(COMMIT_DIR, commitId), Alternates.commitFile(commitId));
+                Commit commit = readCommit(commitId);
+                for (String blobId : commit.getBlobs().values()) {
+                    borrow(join(BLOBS_DIR, blobId), Alternates.blobFile(blobId));
+                }
+                stack.addAll(getParentIds(commitId));
+            }
+            for (File gitletDir : Worktree.all()) {
+                File stageFile = join(gitletDir, "stage", "stage.ser");
+                if (Transaction.exists(stageFile)) {
+                    for (String blobId : readObject(stageFile, Stage.class).additionMap.values()) {
+                        borrow(join(BLOBS_DIR, blobId), Alternates.blobFile(blobId));
+                    }
+                }
+            }
+        } finally {
+            Trace.end();
+        }
+        Alternates.clear();
+    }
+
+    /** Write the files of the commit named REVISION as a FORMAT archive to
+     *  the file OUTPUT, or to standard output if OUTPUT is null. */
+    public void archive(String revision, String format, String output) {
+        if (!format.equals("tar") && !format.equals("zip")) {
+            throw error("Unknown archive format: %s", format);
+        }
+        Commit commit = readCommit(resolveRevision(revision));
+        Trace.begin("archive.write");
+        try {
+            if (output == null) {
+                OutputStream out = new BufferedOutputStream(System.out, 1 << 16);
+                Archive.write(commit, format, out);
+            } else {
+                try (OutputStream out = new BufferedOutputStream(new FileOutputStream(output), 1 << 16)) {
+                    Archive.write(commit, format, out);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            Trace.end();
+        }
+    }
+
+    /** Make a new repository in directory DIR with the history of the one
+     *  at PATH, which becomes its remote "origin", and check out the branch
+     *  PATH has checked out.  Objects are hard-linked from PATH where the
+     *  file system allows, and copied otherwise.  Java has no portable way
+     *  to ask for a reflink (copy-on-write clone), so the copies are plain
+     *  Files.copy ones even on file systems that support them. */
+    public void clone(String path, String dir) {
+        File sourceGitlet = new File(path).getAbsoluteFile();
+        if (!sourceGitlet.getName().equals(".gitlet")) {
+            sourceGitlet = join(sourceGitlet, ".gitlet");
+        }
+        File source = commonDir(sourceGitlet);
+        if (!join(source, "commits").isDirectory() || !join(source, "blobs").isDirectory()) {
+            throw error("No repository found at %s.", path);
+        }
+        File root = new File(dir).getAbsoluteFile();
+        String[] existing = root.list();
+        if (root.exists() && (existing == null || existing.length > 0)) {
+            throw error("%s already exists.", dir);
+        }
+        RepositoryLock.acquire(source, true);
+        if (join(source, "promisor").exists()) {
+            throw error("Cannot clone a partial repository.");
+        }
+
+        Map<String, String> branches = new Refs(source).all();
+        String defaultBranch = readContentsAsString(join(sourceGitlet, "refs", "HEAD"));
+        String headCommitId = branches.get(defaultBranch);
+        if (headCommitId == null) {
+            throw error("A branch with that name does not exist.");
+        }
+
+        File gitlet = join(root, ".gitlet");
+        join(gitlet, "refs", "branches").mkdirs();
+        join(gitlet, "stage").mkdir();
+        join(gitlet, "remotes").mkdir();
+        Trace.begin("clone.linkObjects");
+        try {
+            // Objects are immutable and only ever replaced by a rename, so
+            // sharing their inodes with the source repository is safe.
+            for (String kind : new String[] {"commits", "blobs", "bloom", "bitmaps"}) {
+                linkAll(join(source, kind), join(gitlet, kind));
+            }
+        } finally {
+            Trace.end();
+        }
+        for (String name : new String[] {"shallow", Alternates.ALTERNATES_NAME}) {
+            if (join(source, name).exists()) {
+                Transaction.writeRef(join(gitlet, name), readContents(join(source, name)));
+            }
+        }
+
+        Refs cloneRefs = new Refs(gitlet);
+        for (Map.Entry<String, String> branch : branches.entrySet()) {
+            if (!branch.getKey().contains("__")) {
+                cloneRefs.set("origin__" + branch.getKey(), branch.getValue());
+            }
+        }
+        cloneRefs.set(defaultBranch, headCommitId);
+        cloneRefs.pack();
+        Transaction.writeRef(join(gitlet, "refs", "HEAD"), defaultBranch);
+        Transaction.writeRef(join(gitlet, "remotes", "origin"), Worktree.canonical(source).getPath());
+
+        Trace.begin("clone.checkout");
+        try {
+            Commit commit = readObject(join(gitlet, "commits", headCommitId), Commit.class);
+            for (Map.Entry<String, String> entry : commit.getBlobs().entrySet()) {
+                Blob.writeTo(join(gitlet, "blobs", entry.getValue()), entry.getValue(), join(root, entry.getKey()));
+            }
+        } finally {
+            Trace.end();
+        }
+    }
 
     public void addRemote(String name, String path) {
         File remoteFile = join(REMOTES_DIR, name);
-        if (remoteFile.exists()) {
-            System.out.println("A remote with that name already exists.");
-            System.exit(0);
+        if (Transaction.exists(remoteFile)) {
+            throw error("A remote with that name already exists.");
         }
-        writeContents(remoteFile, path);
+        Transaction.writeRef(remoteFile, path);
     }
 
     public void removeRemote(String name) {
         File remoteFile = join(REMOTES_DIR, name);
-        if (!remoteFile.exists()) {
-            System.out.println("A remote with that name does not exist.");
-            System.exit(0);
+        if (!Transaction.exists(remoteFile)) {
+            throw error("A remote with that name does not exist.");
         }
-        restrictedDelete(remoteFile);
+        Transaction.deleteRef(remoteFile);
     }
 
     public void push(String remoteName, String branchName) {
         File remoteFile = join(REMOTES_DIR, remoteName);
         if (!remoteFile.exists()) {
-            System.out.println("Remote with that name does not exist.");
-            System.exit(0);
+            throw error("Remote with that name does not exist.");
         }
         String remotePath = readContentsAsString(remoteFile);
         File remoteGitlet = new File(remotePath);
@@ -470,23 +923,38 @@ public class Repository {
         File remoteBlobsDir = join(remoteGitlet, "blobs");
 
         if (!remoteBranchesDir.exists() || !remoteCommitsDir.exists() || !remoteBlobsDir.exists()) {
-            System.out.println("Remote repository not initialized.");
-            System.exit(0);
+            throw error("Remote repository not initialized.");
         }
+        RepositoryLock.acquire(remoteGitlet, false);
 
-        File remoteBranchFile = join(remoteBranchesDir, branchName);
-        String remoteCommitId = remoteBranchFile.exists() ? readContentsAsString(remoteBranchFile) : null;
+        Refs remoteRefs = new Refs(remoteGitlet);
+        String remoteCommitId = remoteRefs.get(branchName);
 
         Commit head = getHeadCommit();
         String localCommitId = sha1Commit(head);
 
-        if (remoteCommitId != null && !isAncestor(remoteCommitId, localCommitId)) {
-            System.out.println("Please pull down remote changes before pushing.");
-            System.exit(0);
+        Trace.begin("push.isAncestor");
+        try {
+            if (remoteCommitId != null && !isAncestor(remoteCommitId, localCommitId)) {
+                throw error("Please pull down remote changes before pushing.");
+            }
+        } finally {
+            Trace.end();
         }
 
-        copyCommitsAndBlobs(localCommitId, remoteCommitId, remoteGitlet);
-        writeContents(remoteBranchFile, localCommitId);
+        Trace.begin("push.copyObjects");
+        try {
+            ReachabilityIndex index = ReachabilityIndex.load();
+            if (index != null) {
+                List<String> have = remoteCommitId == null ? List.of() : List.of(remoteCommitId);
+                copyDelta(index.missing(localCommitId, have), remoteGitlet);
+            } else {
+                copyCommitsAndBlobs(localCommitId, remoteCommitId, remoteGitlet);
+            }
+        } finally {
+            Trace.end();
+        }
+        remoteRefs.set(branchName, localCommitId);
     }
 
 
@@ -494,10 +962,16 @@ public class Repository {
 
 
     public void fetch(String remoteName, String branchName) {
+        fetch(remoteName, branchName, -1, false);
+    }
+
+    /** Fetch only the last DEPTH commits of the remote branch, or all of
+     *  them if DEPTH is negative.  If BLOBLESS, copy no blobs: they are
+     *  fetched from the remote when first needed. */
+    public void fetch(String remoteName, String branchName, int depth, boolean blobless) {
         File remoteFile = join(REMOTES_DIR, remoteName);
         if (!remoteFile.exists()) {
-            System.out.println("Remote with that name does not exist.");
-            System.exit(0);
+            throw error("Remote with that name does not exist.");
         }
         String remotePath = readContentsAsString(remoteFile);
         File remoteGitlet = new File(remotePath);
@@ -507,21 +981,27 @@ public class Repository {
         File remoteBlobsDir = join(remoteGitlet, "blobs");
 
         if (!remoteBranchesDir.exists() || !remoteCommitsDir.exists() || !remoteBlobsDir.exists()) {
-            System.out.println("Remote repository not initialized.");
-            System.exit(0);
+            throw error("Remote repository not initialized.");
         }
+        RepositoryLock.acquire(remoteGitlet, true);
 
-        File remoteBranchFile = join(remoteBranchesDir, branchName);
-        if (!remoteBranchFile.exists()) {
-            System.out.println("That remote does not have that branch.");
-            System.exit(0);
+        String remoteCommitId = new Refs(remoteGitlet).get(branchName);
+        if (remoteCommitId == null) {
+            throw error("That remote does not have that branch.");
         }
-        String remoteCommitId = readContentsAsString(remoteBranchFile);
 
-        copyCommitsAndBlobsFromRemote(remoteCommitId, remoteGitlet);
+        Trace.begin("fetch.copyObjects");
+        try {
+            copyCommitsAndBlobsFromRemote(remoteCommitId, remoteGitlet, depth, blobless);
+        } finally {
+            Trace.end();
+        }
+        if (blobless) {
+            PromisorRemote.add(remoteName);
+        }
+        PromisorRemote.forgetMissing();
 
-        File localRemoteBranch = join(BRANCHES_DIR, remoteName + "__" + branchName);
-        writeContents(localRemoteBranch, remoteCommitId);
+        refs.set(remoteName + "__" + branchName, remoteCommitId);
     }
 
 
@@ -529,7 +1009,11 @@ public class Repository {
 
 
     public void pull(String remoteName, String branchName) {
-        fetch(remoteName, branchName);
+        pull(remoteName, branchName, -1, false);
+    }
+
+    public void pull(String remoteName, String branchName, int depth, boolean blobless) {
+        fetch(remoteName, branchName, depth, blobless);
         merge(remoteName + "__" + branchName);
     }
     private boolean isAncestor(String ancestorId, String descendantId) {
@@ -540,7 +1024,7 @@ public class Repository {
                 return true;
             }
             Commit commit = readCommit(descendantId);
-            descendantId = commit.getParent();
+            descendantId = Shallow.parent(descendantId, commit);
         }
         return false;
     }
@@ -562,101 +1046,252 @@ public class Repository {
             visited.add(commitId);
 
             // 读取本地 commit
-            File localCommitFile = Utils.join(COMMIT_DIR, commitId);
+            File localCommitFile = Alternates.commitFile(commitId);
             Commit commit = Utils.readObject(localCommitFile, Commit.class);
 
-            // 写入远程 commit
-            File remoteCommitFile = Utils.join(remoteCommitsDir, commitId);
-            if (!remoteCommitFile.exists()) {
-                Utils.writeObject(remoteCommitFile, commit);
+            // write the commit unless the remote or its alternates have it
+            if (!Alternates.has(remoteGitlet, "commits", commitId)) {
+                Transaction.writeObject(Utils.join(remoteCommitsDir, commitId), commit);
             }
 
             // 复制 blobs（不去重）
             for (String blobId : commit.getBlobs().values()) {
-                File localBlobFile = Utils.join(BLOBS_DIR, blobId);
-                File remoteBlobFile = Utils.join(remoteBlobsDir, blobId);
-                if (!remoteBlobFile.exists()) {
-                    byte[] blobContent = Utils.readContents(localBlobFile);
-                    Utils.writeContents(remoteBlobFile, blobContent);
+                if (!Alternates.has(remoteGitlet, "blobs", blobId)) {
+                    PromisorRemote.ensure(blobId);
+                    byte[] blobContent = Utils.readContents(Alternates.blobFile(blobId));
+                    Transaction.writeObjectContents(Utils.join(remoteBlobsDir, blobId), blobContent);
                 }
             }
 
             // 向上遍历 commit 链（包括 merge 的 second parent）
-            if (commit.getParent() != null) {
+            checkShallowPush(commitId, commit, remoteGitlet);
+            if (Shallow.parent(commitId, commit) != null) {
                 queue.add(commit.getParent());
             }
-            if (commit.getSecondParent() != null) {
+            if (Shallow.secondParent(commitId, commit) != null) {
                 queue.add(commit.getSecondParent());
             }
         }
     }
 
-    private void copyCommitsAndBlobsFromRemote(String remoteCommitId, File remoteGitlet) {
+    /** Copy the commits and blobs of DELTA to the repository REMOTEGITLET
+     *  as they are stored. */
+    private void copyDelta(ReachabilityIndex.Delta delta, File remoteGitlet) {
+        for (String commitId : delta.commits) {
+            if (Shallow.isBoundary(commitId)) {
+                checkShallowPush(commitId, readCommit(commitId), remoteGitlet);
+            }
+        }
+        for (String commitId : delta.commits) {
+            if (!Alternates.has(remoteGitlet, "commits", commitId)) {
+                Transaction.writeObjectContents(join(remoteGitlet, "commits", commitId),
+                        readContents(Alternates.commitFile(commitId)));
+            }
+        }
+        delta.blobs.removeIf(blobId -> Alternates.has(remoteGitlet, "blobs", blobId));
+        PromisorRemote.prefetch(delta.blobs);
+        for (String blobId : delta.blobs) {
+            Transaction.writeObjectContents(join(remoteGitlet, "blobs", blobId),
+                    readContents(Alternates.blobFile(blobId)));
+        }
+    }
+
+    //helper function for fetching the blobs a checkout of COMMIT will write, in one batch
+    private void prefetchBlobs(Commit commit, SparseCheckout sparse) {
+        if (!PromisorRemote.isPartial()) {
+            return;
+        }
+        List<String> blobIds = new ArrayList<>();
+        for (Map.Entry<String, String> entry : commit.getBlobs().entrySet()) {
+            if (sparse.includes(entry.getKey())) {
+                blobIds.add(entry.getValue());
+            }
+        }
+        PromisorRemote.prefetch(blobIds);
+    }
+
+    //helper function for refusing to push a shallow boundary commit whose parents the remote lacks
+    private void checkShallowPush(String commitId, Commit commit, File remoteGitlet) {
+        if (!Shallow.isBoundary(commitId)) {
+            return;
+        }
+        for (String parentId : new String[] {commit.getParent(), commit.getSecondParent()}) {
+            if (parentId != null && !Alternates.has(remoteGitlet, "commits", parentId)) {
+                throw error("Cannot push shallow history the remote does not have.");
+            }
+        }
+    }
+
+    /** Copy the history of REMOTECOMMITID from REMOTEGITLET: only its last
+     *  DEPTH levels of commits if DEPTH >= 0, and no blobs if BLOBLESS. */
+    private void copyCommitsAndBlobsFromRemote(String remoteCommitId, File remoteGitlet, int depth,
+                                               boolean blobless) {
         Set<String> visited = new HashSet<>();
         Queue<String> queue = new LinkedList<>();
         queue.add(remoteCommitId);
+        Map<String, Integer> depths = new HashMap<>();
+        depths.put(remoteCommitId, 1);
+        List<String> copied = new ArrayList<>();
 
-        File remoteCommits = join(remoteGitlet, "commits");
-        File remoteBlobs = join(remoteGitlet, "blobs");
+        // When every branch tip has a bitmap, commits reachable from a local
+        // branch are present along with all their ancestors, so the walk can
+        // stop at them.  A shallow repository may lack those ancestors, and a
+        // tip without a bitmap would cost a walk of its whole history.
+        ReachabilityIndex index = Shallow.isShallow() ? null : ReachabilityIndex.load();
+        ReachabilityIndex.Reach have = null;
+        Collection<String> tips = refs.all().values();
+        if (index != null && tips.stream().allMatch(ReachabilityIndex::hasBitmap)) {
+            have = index.reach(tips);
+        }
 
         while (!queue.isEmpty()) {
             String commitId = queue.poll();
             if (visited.contains(commitId)) continue;
             visited.add(commitId);
+            if (have != null && have.contains(commitId)) continue;
 
-            File remoteCommitFile = join(remoteCommits, commitId);
+            File remoteCommitFile = Alternates.find(remoteGitlet, "commits", commitId);
             if (!remoteCommitFile.exists()) continue;
 
             Commit commit = readObject(remoteCommitFile, Commit.class);
 
-            File localCommitFile = join(COMMIT_DIR, commitId);
-            if (!localCommitFile.exists()) {
-                writeObject(localCommitFile, commit);
+            // objects present here or in an alternate are not copied again
+            if (!Alternates.commitFile(commitId).exists()) {
+                Transaction.writeObject(join(COMMIT_DIR, commitId), commit);
+                copied.add(commitId);
             }
 
-            for (String blobId : commit.getBlobs().values()) {
-                File localBlobFile = join(BLOBS_DIR, blobId);
-                if (!localBlobFile.exists()) {
-                    File remoteBlobFile = join(remoteBlobs, blobId);
+            for (String blobId : blobless ? List.<String>of() : commit.getBlobs().values()) {
+                if (!Alternates.blobFile(blobId).exists()) {
+                    File remoteBlobFile = Alternates.find(remoteGitlet, "blobs", blobId);
                     if (remoteBlobFile.exists()) {
                         byte[] contents = readContents(remoteBlobFile);
-                        writeContents(localBlobFile, contents);
+                        Transaction.writeObjectContents(join(BLOBS_DIR, blobId), contents);
                     }
                 }
             }
 
-            if (commit.getParent() != null) queue.add(commit.getParent());
-            if (commit.getSecondParent() != null) queue.add(commit.getSecondParent());
+            int next = depths.get(commitId) + 1;
+            if (depth >= 0 && next > depth) continue;
+            for (String parentId : new String[] {commit.getParent(), commit.getSecondParent()}) {
+                if (parentId != null) {
+                    depths.putIfAbsent(parentId, next);
+                    queue.add(parentId);
+                }
+            }
         }
+        Shallow.update(copied);
     }
 
 
 
+    //helper function for hard-linking every file in from into to, copying once links fail
+    private void linkAll(File from, File to) {
+        List<String> names = plainFilenamesIn(from);
+        if (names == null) {
+            return;
+        }
+        to.mkdirs();
+        boolean link = true;
+        for (String name : names) {
+            Path source = join(from, name).toPath();
+            Path target = join(to, name).toPath();
+            try {
+                if (link) {
+                    try {
+                        Files.createLink(target, source);
+                        continue;
+                    } catch (IOException | UnsupportedOperationException excp) {
+                        link = false;  // e.g. across file systems: copy instead
+                    }
+                }
+                Files.copy(source, target);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    //helper function for copying an object found in an alternate into this repository
+    private void borrow(File own, File found) {
+        if (!own.exists() && found.exists()) {
+            Transaction.writeObjectContents(own, readContents(found));
+        }
+    }
+
+    //helper function for the .gitlet directory a linked working tree's commondir file points at
+    private static File commonDir(File gitletDir) {
+        File commondir = join(gitletDir, Worktree.COMMONDIR_NAME);
+        return commondir.isFile() ? new File(readContentsAsString(commondir).trim()) : gitletDir;
+    }
+
     //helper function for getHeadCommit
     public Commit getHeadCommit() {
-        String branchName = readContentsAsString(HEAD_FILE);
-        File branchFile = join(BRANCHES_DIR, branchName);
-        String commitId = readContentsAsString(branchFile);
-        File commitFile = join(COMMIT_DIR, commitId);
-        return readObject(commitFile, Commit.class);
+        return readCommit(getHeadCommitId());
+    }
+
+    //helper function for the id of the head commit
+    private String getHeadCommitId() {
+        return refs.get(readContentsAsString(HEAD_FILE));
+    }
+
+    //get the commit id named by a branch name or a (short) commit id
+    private String resolveRevision(String name) {
+        String commitId = refs.get(name);
+        if (commitId != null) {
+            return commitId;
+        }
+        commitId = expandCommitId(name);
+        if (commitId == null) {
+            throw error("No commit with that id exists.");
+        }
+        return commitId;
+    }
+
+    //parse a date given as a commit timestamp, yyyy-MM-dd or yyyy-MM-dd HH:mm:ss
+    private Date parseDate(String date) {
+        String[] patterns = {"EEE MMM d HH:mm:ss yyyy Z", "yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd"};
+        for (String pattern : patterns) {
+            try {
+                return new SimpleDateFormat(pattern).parse(date);
+            } catch (ParseException excp) {
+                // try the next pattern
+            }
+        }
+        throw error("Incorrect operands.");
     }
 
     //helper function for getStage
     public Stage getStage() {
+        if (stageCache != null) {
+            return stageCache;
+        }
         File stageFile = join(STAGE_DIR, "stage.ser");
-        if (!stageFile.exists()) {
-            return new Stage();  // 空的 stage（additionMap、removalSet 初始化为空）
+        if (!Transaction.exists(stageFile)) {
+            stageCache = new Stage();  // an empty stage
+        } else {
+            stageCache = Utils.readObject(stageFile, Stage.class);
         }
-        return Utils.readObject(stageFile, Stage.class);
+        return stageCache;
     }
 
     public void saveStage(Stage stage) {
         File stageFile = join(STAGE_DIR, "stage.ser");
-        Utils.writeObject(stageFile, stage);
+        Transaction.writeRef(stageFile, serialize(stage));
+        stageCache = stage;
+    }
+
+    /** Forget everything cached that another process may change between
+     *  commands, or that a failed command may have left half-updated. */
+    void resetCaches() {
+        stageCache = null;
+        refs.forget();
+        Alternates.forget();
+        Shallow.forget();
     }
 
     //helper function for sha1Commit
-    private String sha1Commit(Commit commit) {
+    static String sha1Commit(Commit commit) {
         String parent = (commit.getParent() == null) ? "" : commit.getParent();
         String secondParent = (commit.getSecondParent() == null) ? "" : commit.getSecondParent();
         String blobs = (commit.getBlobs() == null) ? "" : commit.getBlobs().toString();
@@ -664,63 +1299,130 @@ public class Repository {
         return Utils.sha1(commit.getMessage(), commit.getTimestamp(), parent, secondParent, blobs);
     }
 
+    //helper function for saving a new commit whose first parent is parentCommit, returns its id
+    private String writeCommit(Commit commit, Commit parentCommit) {
+        String commitId = sha1Commit(commit);
+        Transaction.writeObject(Alternates.commitFile(commitId), commit);
+        ChangedPathFilter.write(commitId, commit, parentCommit);
+        return commitId;
+    }
+
     //get Commit from file eg: get parent commit
     private Commit readCommit(String CommitId) {
-        File commitFile = join(COMMIT_DIR, CommitId);
-        return readObject(commitFile, Commit.class);
+        Commit commit = commitCache.get(CommitId);
+        if (commit == null) {
+            commit = readObject(Alternates.commitFile(CommitId), Commit.class);
+            commitCache.put(CommitId, commit);
+        }
+        return commit;
+    }
+
+    //helper function for whether commit changed path relative to its first parent
+    private boolean changesPath(String commitId, Commit commit, String path) {
+        String parent = Shallow.parent(commitId, commit);
+        String parentBlobId = parent == null ? null : readCommit(parent).getBlobs().get(path);
+        return !Objects.equals(commit.getBlobs().get(path), parentBlobId);
     }
 
     //helper fuction for printing commit info for log fuction
-    private void printCommitInfo(Commit commit) {
-        System.out.println("===");
-        System.out.println("commit " + sha1Commit(commit));
+    private void printCommitInfo(PrintWriter out, String commitId, Commit commit) {
+        out.println("===");
+        out.println("commit " + commitId);
 
         if (commit.getSecondParent() != null) {
             String parent1 = commit.getParent().substring(0, 7);
             String parent2 = commit.getSecondParent().substring(0, 7);
-            System.out.println("Merge: " + parent1 + " " + parent2);
+            out.println("Merge: " + parent1 + " " + parent2);
         }
 
-        System.out.println("Date: " + commit.getTimestamp());
-        System.out.println(commit.getMessage());
-        System.out.println();
+        out.println("Date: " + commit.getTimestamp());
+        out.println(commit.getMessage());
+        out.println();
     }
 
     // get full commitID
     private String expandCommitId(String shortId) {
-        for (File file : COMMIT_DIR.listFiles()) {
-            if (file.getName().startsWith(shortId)) {
-                return file.getName();
+        if (shortId.length() == UID_LENGTH && Alternates.commitFile(shortId).exists()) {
+            return shortId;
+        }
+        for (File store : Alternates.stores()) {
+            List<String> ids = plainFilenamesIn(join(store, "commits"));
+            for (String id : ids == null ? List.<String>of() : ids) {
+                if (id.startsWith(shortId)) {
+                    return id;
+                }
             }
         }
         return null;
     }
 
     //helper fuction for restore file from checkout commit
+    //helper function for turning a file name given on the command line into a tracked path:
+    //relative to the working directory, with "/" between directories, "" for the directory itself
+    private static String workingPath(String fileName) {
+        Path root = CWD.toPath().toAbsolutePath().normalize();
+        Path path = root.resolve(fileName).normalize();
+        if (!path.startsWith(root)) {
+            throw error("File does not exist.");
+        }
+        return root.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    //helper function for deleting the files tracked or staged before a checkout of TARGET that it leaves out
+    private void deleteTrackedFiles(Commit headCommit, Commit target, SparseCheckout sparse) {
+        Set<String> tracked = new TreeSet<>(headCommit.getBlobs().keySet());
+        tracked.addAll(getStage().additionMap.keySet());
+        for (String fileName : tracked) {
+            if (!target.getBlobs().containsKey(fileName) || !sparse.includes(fileName)) {
+                deleteWorkingFile(fileName);
+            }
+        }
+    }
+
+    //helper function for deleting working file PATH, and the directories it leaves empty
+    private static void deleteWorkingFile(String path) {
+        File file = join(CWD, path);
+        if (path.indexOf('/') < 0) {
+            restrictedDelete(file);
+            return;
+        }
+        if (file.isDirectory() || !file.delete()) {
+            return;
+        }
+        File dir = file.getParentFile();
+        while (!dir.equals(CWD) && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+
     private void restoreFileFromCommit(Commit commit, String fileName) {
+        fileName = workingPath(fileName);
         Map<String, String> tracked = commit.getBlobs();
         if (!tracked.containsKey(fileName)) {
-            System.out.println("File does not exist in that commit.");
-            System.exit(0);
+            throw error("File does not exist in that commit.");
         }
         String blobId = tracked.get(fileName);
-        Blob blob = readObject(join(BLOBS_DIR, blobId), Blob.class);
-        writeContents(join(CWD, fileName), blob.getContents());
+        Blob.writeTo(blobId, join(CWD, fileName));
     }
 
     private void printModificationsNotStaged() {
         Commit head = getHeadCommit();
         Stage stage = getStage();
         Map<String, String> tracked = head.getBlobs();
-        List<String> cwdFiles = plainFilenamesIn(CWD);
+        Map<String, String> watched = Watcher.snapshot();
+        Set<String> cwdFiles = new HashSet<>(watched != null ? watched.keySet() : TreeWalker.list());
 
         List<String> result = new ArrayList<>();
 
-        // First, check all files in the working directory
+        SparseCheckout sparse = SparseCheckout.load();
+
+        // First, check all files in the working directory.  Files outside
+        // the sparse patterns are not checked out, so they are not hashed.
         for (String fileName : cwdFiles) {
-            File file = join(CWD, fileName);
-            Blob blob = new Blob(file);
-            String blobId = blob.getId();
+            if (!sparse.includes(fileName)) {
+                continue;
+            }
+            String blobId = watched != null ? watched.get(fileName) : new Blob(join(CWD, fileName)).getId();
 
             // Case 1: File is staged for addition but modified afterward
             if (stage.additionMap.containsKey(fileName)) {
@@ -738,7 +1440,8 @@ public class Repository {
 
         // Second, check if any tracked file is missing (deleted) but not staged for removal
         for (String fileName : tracked.keySet()) {
-            if (!cwdFiles.contains(fileName) && !stage.removalSet.contains(fileName)) {
+            if (!cwdFiles.contains(fileName) && !stage.removalSet.contains(fileName)
+                    && sparse.includes(fileName)) {
                 result.add(fileName + " (deleted)");
             }
         }
@@ -754,7 +1457,7 @@ public class Repository {
         Commit head = getHeadCommit();
         Stage stage = getStage();
         Map<String, String> tracked = head.getBlobs();
-        List<String> cwdFiles = plainFilenamesIn(CWD);
+        List<String> cwdFiles = workingFileNames();
 
         List<String> result = new ArrayList<>();
         for (String fileName : cwdFiles) {
@@ -768,20 +1471,27 @@ public class Repository {
         }
     }
 
+    //helper function for listing working files, from the watcher's snapshot if one is running
+    private List<String> workingFileNames() {
+        Map<String, String> watched = Watcher.snapshot();
+        return watched != null ? new ArrayList<>(watched.keySet()) : TreeWalker.list();
+    }
+
     //helper function for get parent Ids
-    private List<String> getParentIds(Commit commit) {
+    private List<String> getParentIds(String commitId) {
+        Commit commit = readCommit(commitId);
         List<String> parentIds = new ArrayList<>();
-        if (commit.getParent() != null) {
+        if (Shallow.parent(commitId, commit) != null) {
             parentIds.add(commit.getParent());
         }
-        if (commit.getSecondParent() != null) {
+        if (Shallow.secondParent(commitId, commit) != null) {
             parentIds.add(commit.getSecondParent());
         }
         return parentIds;
     }
 
     //BFS find split point of two commits
-    private String findSplitPoint(String commitId1, String commitId2) {
+    String findSplitPoint(String commitId1, String commitId2) {
         Set<String> visited = new HashSet<>();
         Queue<String> queue = new LinkedList<>();
         queue.add(commitId1);
@@ -789,7 +1499,7 @@ public class Repository {
         while (!queue.isEmpty()) {
             String current = queue.poll();
             visited.add(current);
-            for (String parentId : getParentIds(readCommit(current))) {
+            for (String parentId : getParentIds(current)) {
                 if (parentId != null && !visited.contains(parentId)) {
                     queue.add(parentId);
                 }
@@ -804,7 +1514,7 @@ public class Repository {
                 return current;
             }
             visited2.add(current);
-            for (String parentId : getParentIds(readCommit(current))) {
+            for (String parentId : getParentIds(current)) {
                 if (parentId != null && !visited2.contains(parentId)) {
                     queue.add(parentId);
                 }
@@ -817,13 +1527,13 @@ public class Repository {
         Stage stage = getStage();
         Map<String, String> headBlobs = headCommit.getBlobs();
         Map<String, String> givenBlobs = givenCommit.getBlobs();
-        List<String> cwdFiles = plainFilenamesIn(CWD);
+        List<String> cwdFiles = workingFileNames();
+        SparseCheckout sparse = SparseCheckout.load();
 
         for (String fileName : cwdFiles) {
             if (!headBlobs.containsKey(fileName) && !stage.additionMap.containsKey(fileName)
-                    && givenBlobs.containsKey(fileName)) {
-                System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
-                System.exit(0);
+                    && givenBlobs.containsKey(fileName) && sparse.includes(fileName)) {
+                throw error("There is an untracked file in the way; delete it, or add and commit it first.");
             }
         }
     }
@@ -834,9 +1544,14 @@ public class Repository {
         Commit headCommit = readCommit(headCommitId);
         Commit givenCommit = readCommit(givenCommitId);
 
-        Map<String, String> splitBlobs = splitCommit.getBlobs();
-        Map<String, String> headBlobs = headCommit.getBlobs();
-        Map<String, String> givenBlobs = givenCommit.getBlobs();
+        Map<String, String> splitBlobs = new HashMap<>(splitCommit.getBlobs());
+        Map<String, String> headBlobs = new HashMap<>(headCommit.getBlobs());
+        Map<String, String> givenBlobs = new HashMap<>(givenCommit.getBlobs());
+        SparseCheckout sparse = SparseCheckout.load();
+
+        for (Map.Entry<String, String> move : alignRenames(splitBlobs, headBlobs, givenBlobs).entrySet()) {
+            moveFile(move.getKey(), move.getValue(), headBlobs.get(move.getValue()), sparse);
+        }
 
         Set<String> allFiles = new HashSet<>();
         allFiles.addAll(splitBlobs.keySet());
@@ -860,11 +1575,12 @@ public class Repository {
             if (headSameSplit && !givenSameSplit) {
                 // split==head, given不同 => checkout given
                 if (givenBlobId == null) {
-                    restrictedDelete(join(CWD, fileName));
+                    deleteWorkingFile(fileName);
                     stageForRemoval(fileName);
+                } else if (!sparse.includes(fileName)) {
+                    stageBlob(fileName, givenBlobId);
                 } else {
-                    Blob blob = readObject(join(BLOBS_DIR, givenBlobId), Blob.class);
-                    writeContents(join(CWD, fileName), blob.getContents());
+                    Blob.writeTo(givenBlobId, join(CWD, fileName));
                     add(fileName);
                 }
             } else if (!headSameSplit && givenSameSplit) {
@@ -874,15 +1590,17 @@ public class Repository {
                 conflict = true;
 
                 String headContent = (headBlobId == null) ? "" :
-                        new String(readObject(join(BLOBS_DIR, headBlobId), Blob.class).getContents(), StandardCharsets.UTF_8);
+                        new String(Blob.fromId(headBlobId).getContents(), StandardCharsets.UTF_8);
                 String givenContent = (givenBlobId == null) ? "" :
-                        new String(readObject(join(BLOBS_DIR, givenBlobId), Blob.class).getContents(), StandardCharsets.UTF_8);
+                        new String(Blob.fromId(givenBlobId).getContents(), StandardCharsets.UTF_8);
 
                 String conflictContent = "<<<<<<< HEAD\n" + headContent +
                         "=======\n" + givenContent +
                         ">>>>>>>\n";
 
-                writeContents(join(CWD, fileName), conflictContent.getBytes(StandardCharsets.UTF_8));
+                File conflictFile = join(CWD, fileName);
+                conflictFile.getParentFile().mkdirs();
+                writeContents(conflictFile, conflictContent.getBytes(StandardCharsets.UTF_8));
                 add(fileName);
             }
         }
@@ -890,6 +1608,162 @@ public class Repository {
         return conflict;
     }
 
+    //helper function for replaying commitId on top of ontoId without touching the working tree, returns the new tip
+    private String replayCommit(String commitId, String ontoId) {
+        Commit commit = readCommit(commitId);
+        Commit onto = readCommit(ontoId);
+        String parentId = Shallow.parent(commitId, commit);
+        if (parentId == null && commit.getParent() != null) {
+            throw error("No common ancestor; fetch more history first.");
+        }
+        Map<String, String> parentBlobs = parentId == null ? new HashMap<>() : readCommit(parentId).getBlobs();
+
+        List<String> conflicts = new ArrayList<>();
+        Map<String, String> newBlobs = mergeBlobMaps(parentBlobs, onto.getBlobs(), commit.getBlobs(), conflicts);
+        if (!conflicts.isEmpty()) {
+            Collections.sort(conflicts);
+            throw error("Cannot replay %s: conflict in %s.", commitId.substring(0, 7),
+                    String.join(", ", conflicts));
+        }
+        if (newBlobs.equals(onto.getBlobs())) {
+            return ontoId;  // the changes are already in onto
+        }
+        return writeCommit(new Commit(commit.getMessage(), ontoId, newBlobs), onto);
+    }
+
+    //helper function for the three-way merge of blob maps in memory, adds conflicting paths to conflicts
+    private Map<String, String> mergeBlobMaps(Map<String, String> split, Map<String, String> head,
+                                              Map<String, String> given, List<String> conflicts) {
+        Map<String, String> splitBlobs = new HashMap<>(split);
+        Map<String, String> headBlobs = new HashMap<>(head);
+        Map<String, String> givenBlobs = new HashMap<>(given);
+        alignRenames(splitBlobs, headBlobs, givenBlobs);
+
+        Set<String> allFiles = new HashSet<>();
+        allFiles.addAll(splitBlobs.keySet());
+        allFiles.addAll(headBlobs.keySet());
+        allFiles.addAll(givenBlobs.keySet());
+
+        Map<String, String> merged = new HashMap<>(headBlobs);
+        for (String fileName : allFiles) {
+            String splitBlobId = splitBlobs.get(fileName);
+            String headBlobId = headBlobs.get(fileName);
+            String givenBlobId = givenBlobs.get(fileName);
+            if (Objects.equals(headBlobId, splitBlobId)) {
+                if (givenBlobId == null) {
+                    merged.remove(fileName);
+                } else {
+                    merged.put(fileName, givenBlobId);
+                }
+            } else if (!Objects.equals(givenBlobId, splitBlobId) && !Objects.equals(headBlobId, givenBlobId)) {
+                conflicts.add(fileName);
+            }
+        }
+        return merged;
+    }
+
+    //helper function for moving the current branch from oldId to newId, writing only the files that differ
+    private void advanceHead(String oldId, String newId, boolean checkout) {
+        if (checkout) {
+            Commit oldCommit = readCommit(oldId);
+            Commit newCommit = readCommit(newId);
+            checkUntrackedFiles(oldCommit, newCommit);
+            Trace.begin("replay.writeWorkingTree");
+            try {
+                SparseCheckout sparse = SparseCheckout.load();
+                Map<String, String> oldBlobs = oldCommit.getBlobs();
+                Map<String, String> changed = new TreeMap<>();
+                for (Map.Entry<String, String> entry : newCommit.getBlobs().entrySet()) {
+                    if (!entry.getValue().equals(oldBlobs.get(entry.getKey())) && sparse.includes(entry.getKey())) {
+                        changed.put(entry.getKey(), entry.getValue());
+                    }
+                }
+                PromisorRemote.prefetch(changed.values());
+                for (String fileName : oldBlobs.keySet()) {
+                    if (!newCommit.getBlobs().containsKey(fileName)) {
+                        deleteWorkingFile(fileName);
+                    }
+                }
+                for (Map.Entry<String, String> entry : changed.entrySet()) {
+                    Blob.writeTo(entry.getValue(), join(CWD, entry.getKey()));
+                }
+            } finally {
+                Trace.end();
+            }
+        }
+        refs.set(readContentsAsString(HEAD_FILE), newId);
+    }
+
+    //helper function for the ids of commitId and all its ancestors
+    private Set<String> ancestors(String commitId) {
+        Set<String> visited = new HashSet<>();
+        Queue<String> queue = new LinkedList<>();
+        queue.add(commitId);
+        while (!queue.isEmpty()) {
+            String current = queue.poll();
+            if (visited.add(current)) {
+                queue.addAll(getParentIds(current));
+            }
+        }
+        return visited;
+    }
+
+    //helper function for re-keying the three blob maps of a merge onto renamed paths, returns head's files to move
+    private Map<String, String> alignRenames(Map<String, String> splitBlobs, Map<String, String> headBlobs,
+                                             Map<String, String> givenBlobs) {
+        // When one side renamed a file the other still has at its old
+        // path, move all three versions to the new path before merging file
+        // by file.
+        Map<String, String> headMoves = new LinkedHashMap<>();
+        Trace.begin("merge.detectRenames");
+        try {
+            Map<String, String> headRenames = RenameDetector.detect(splitBlobs, headBlobs);
+            Map<String, String> givenRenames = RenameDetector.detect(splitBlobs, givenBlobs);
+            for (Map.Entry<String, String> rename : givenRenames.entrySet()) {
+                String from = rename.getKey();
+                String to = rename.getValue();
+                if (headRenames.containsKey(from) || !headBlobs.containsKey(from) || headBlobs.containsKey(to)) {
+                    continue;
+                }
+                headBlobs.put(to, headBlobs.remove(from));
+                splitBlobs.put(to, splitBlobs.remove(from));
+                headMoves.put(from, to);
+            }
+            for (Map.Entry<String, String> rename : headRenames.entrySet()) {
+                String from = rename.getKey();
+                String to = rename.getValue();
+                if (givenRenames.containsKey(from) || !givenBlobs.containsKey(from) || givenBlobs.containsKey(to)) {
+                    continue;
+                }
+                givenBlobs.put(to, givenBlobs.remove(from));
+                splitBlobs.put(to, splitBlobs.remove(from));
+            }
+        } finally {
+            Trace.end();
+        }
+        return headMoves;
+    }
+
+    //helper function for moving head's version of a file to the path the other branch renamed it to
+    private void moveFile(String from, String to, String blobId, SparseCheckout sparse) {
+        deleteWorkingFile(from);
+        stageForRemoval(from);
+        if (sparse.includes(to)) {
+            Blob.writeTo(blobId, join(CWD, to));
+            add(to);
+        } else {
+            stageBlob(to, blobId);
+        }
+    }
+
+    //helper function for staging a blob that is not written to the working tree
+    private void stageBlob(String fileName, String blobId) {
+        Stage stage = getStage();
+        stage.removalSet.remove(fileName);
+        stage.additionMap.put(fileName, blobId);
+        saveStage(stage);
+    }
+
     private void stageForRemoval(String fileName) {
         Stage stage = getStage();
         stage.additionMap.remove(fileName); // remove if staged for addition
@@ -0,0 +1,108 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static gitlet.Utils.*;
+
+/** Reader/writer locking of whole repositories between processes.
+ *
+ *  Every command except init and watch locks .gitlet/lock before touching
+ *  the repository: read-only commands take a shared lock, so any number
+ *  of them run at once, and all others take an exclusive lock.  push and
+ *  fetch also lock the remote repository.  Locks are held until the
+ *  command's transaction has been committed, and are released by the
+ *  operating system if the process dies.
+ *
+ *  Commands under the shared lock still write a few files of their own,
+ *  each so that concurrent readers cannot see it half written or lose it:
+ *  log saves changed-path filters, and status and archive in a partial
+ *  clone fetch blobs from the promisor remote, all as objects written to
+ *  a temporary file and atomically renamed on commit (two readers
+ *  writing the same one write the same bytes); status replaces the
+ *  watcher snapshot by a rename under the watcher's own lock; and the
+ *  empty files that only mark something by their name (watcher cookies,
+ *  missing-blob markers) have no contents to tear.
+ *
+ *  A command waits at most GITLET_LOCK_TIMEOUT milliseconds (default 10
+ *  seconds; 0 means not at all) for a lock before giving up.
+ */
+class RepositoryLock {
+
+    static final String LOCK_FILE_NAME = "lock";
+    private static final long DEFAULT_TIMEOUT = 10_000;
+    /** Longest pause between attempts to take a lock, in milliseconds. */
+    private static final long MAX_BACKOFF = 50;
+
+    /** The locks taken so far, with their channels. */
+    private static final List<FileLock> held = new ArrayList<>();
+
+    /** Lock the repository whose .gitlet directory is GITLETDIR, shared if
+     *  SHARED and exclusively otherwise. */
+    static void acquire(File gitletDir, boolean shared) {
+        Trace.begin(shared ? "lock.shared" : "lock.exclusive");
+        try {
+            FileChannel channel = FileChannel.open(join(gitletDir, LOCK_FILE_NAME).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long deadline = System.currentTimeMillis() + timeout();
+            long backoff = 1;
+            while (true) {
+                FileLock lock;
+                try {
+                    lock = channel.tryLock(0, Long.MAX_VALUE, shared);
+                } catch (OverlappingFileLockException excp) {
+                    // this process already holds it (a remote that is this repository)
+                    channel.close();
+                    return;
+                }
+                if (lock != null) {
+                    held.add(lock);
+                    return;
+                }
+                if (System.currentTimeMillis() >= deadline) {
+                    channel.close();
+                    throw error("Another gitlet process is using the repository; try again later.");
+                }
+                Thread.sleep(backoff);
+                backoff = Math.min(2 * backoff, MAX_BACKOFF);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalArgumentException("interrupted while waiting for a lock");
+        } finally {
+            Trace.end();
+        }
+    }
+
+    /** Release every lock taken by acquire(). */
+    static void releaseAll() {
+        for (FileLock lock : held) {
+            try {
+                lock.channel().close();
+            } catch (IOException excp) {
+                // closing the channel released the lock anyway
+            }
+        }
+        held.clear();
+    }
+
+    private static long timeout() {
+        String value = System.getenv("GITLET_LOCK_TIMEOUT");
+        if (value == null || value.isEmpty()) {
+            return DEFAULT_TIMEOUT;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value));
+        } catch (NumberFormatException excp) {
+            return DEFAULT_TIMEOUT;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static gitlet.Repository.COMMON_DIR;
+import static gitlet.Utils.*;
+
+/** The boundary of a shallow repository, made by "fetch --depth N".
+ *
+ *  .gitlet/shallow lists, one per line, the commits whose parents were
+ *  not fetched.  History walks (log, split points, ancestry checks,
+ *  object copying and bitmaps) treat these commits as roots by asking
+ *  for parents through parent() and secondParent().  A later fetch that
+ *  brings in the missing parents removes the commits from the list.
+ */
+class Shallow {
+
+    static final File SHALLOW_FILE = join(COMMON_DIR, "shallow");
+
+    /** The boundary commits, once read. */
+    private static Set<String> boundaries;
+
+    /** Returns true if this repository has a shallow boundary. */
+    static boolean isShallow() {
+        return !load().isEmpty();
+    }
+
+    /** Returns true if the parents of commit COMMITID are not present. */
+    static boolean isBoundary(String commitId) {
+        return load().contains(commitId);
+    }
+
+    /** Returns the first parent of COMMIT, whose id is COMMITID, or null if
+     *  it has none or is a boundary commit. */
+    static String parent(String commitId, Commit commit) {
+        return isBoundary(commitId) ? null : commit.getParent();
+    }
+
+    /** Returns the second parent of COMMIT, whose id is COMMITID, or null if
+     *  it has none or is a boundary commit. */
+    static String secondParent(String commitId, Commit commit) {
+        return isBoundary(commitId) ? null : commit.getSecondParent();
+    }
+
+    /** Update the boundary after FETCHED commits have been copied in: a
+     *  fetched commit with a missing parent joins it, and a boundary
+     *  commit whose parents are all present now leaves it, along with any
+     *  changed-path filter saved while its parent was missing.  Bitmaps
+     *  that may have been written before the history was complete are
+     *  deleted then too. */
+    static void update(Collection<String> fetched) {
+        Set<String> updated = new TreeSet<>(load());
+        updated.addAll(fetched);
+        updated.removeIf(id -> {
+            Commit commit = readObject(Alternates.commitFile(id), Commit.class);
+            return isPresent(commit.getParent()) && isPresent(commit.getSecondParent());
+        });
+        if (updated.equals(load())) {
+            return;
+        }
+        boolean deepened = false;
+        for (String id : load()) {
+            if (!updated.contains(id)) {
+                deepened = true;
+                if (join(ChangedPathFilter.BLOOM_DIR, id).exists()) {
+                    Transaction.deleteRef(join(ChangedPathFilter.BLOOM_DIR, id));
+                }
+            }
+        }
+        if (deepened) {
+            ReachabilityIndex.delete();
+        }
+        if (updated.isEmpty()) {
+            Transaction.deleteRef(SHALLOW_FILE);
+        } else {
+            Transaction.writeRef(SHALLOW_FILE, String.join("\n", updated) + "\n");
+        }
+        boundaries = updated;
+    }
+
+    /** Forget the boundary read so far; it is read again when next
+     *  needed. */
+    static void forget() {
+        boundaries = null;
+    }
+
+    private static Set<String> load() {
+        if (boundaries == null) {
+            boundaries = Transaction.exists(SHALLOW_FILE)
+                ? new HashSet<>(readContentsAsString(SHALLOW_FILE).lines().toList())
+                : new HashSet<>();
+        }
+        return boundaries;
+    }
+
+    private static boolean isPresent(String commitId) {
+        return commitId == null || Alternates.commitFile(commitId).exists();
+    }
+}
@@ -0,0 +1,99 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+
+import static gitlet.Repository.GITLET_DIR;
+import static gitlet.Utils.*;
+
+/** The sparse-checkout patterns of a repository, which limit the tracked
+ *  files that are written to and examined in the working directory.
+ *
+ *  .gitlet/sparse-checkout holds one glob pattern per line, such as
+ *  "*.java" or "README*".  A pattern starting with "!" excludes the files
+ *  it matches again, and a later pattern overrides an earlier one, so the
+ *  last pattern matching a file decides; a file no pattern matches is
+ *  excluded.  Blank lines and lines starting with "#" are ignored.  With
+ *  no pattern file every file is included.  Patterns match whole paths,
+ *  so "*.java" selects only top-level files; "**.java" or "src/**" reach
+ *  into directories.
+ *
+ *  Excluded files stay in commits exactly as they are: commits are built
+ *  from their parent's blob map, and merge carries excluded files over
+ *  without writing them out unless they conflict.
+ */
+class SparseCheckout {
+
+    static final File SPARSE_FILE = join(GITLET_DIR, "sparse-checkout");
+
+    /** The patterns, in file order, without any leading "!". */
+    private final List<PathMatcher> matchers = new ArrayList<>();
+    /** Whether the pattern at the same position started with "!". */
+    private final List<Boolean> negated = new ArrayList<>();
+    private final List<String> lines = new ArrayList<>();
+    private final boolean enabled;
+
+    private SparseCheckout(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /** Returns the patterns of the current repository. */
+    static SparseCheckout load() {
+        if (!Transaction.exists(SPARSE_FILE)) {
+            return new SparseCheckout(false);
+        }
+        return parse(readContentsAsString(SPARSE_FILE).lines().toList());
+    }
+
+    /** Returns the patterns in LINES. */
+    static SparseCheckout parse(List<String> lines) {
+        SparseCheckout sparse = new SparseCheckout(true);
+        for (String line : lines) {
+            String pattern = line.trim();
+            if (pattern.isEmpty() || pattern.startsWith("#")) {
+                continue;
+            }
+            boolean negate = pattern.startsWith("!");
+            if (negate) {
+                pattern = pattern.substring(1);
+            }
+            sparse.matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+            sparse.negated.add(negate);
+            sparse.lines.add(line.trim());
+        }
+        return sparse;
+    }
+
+    /** Write these patterns to the pattern file. */
+    void save() {
+        Transaction.writeRef(SPARSE_FILE, String.join("\n", lines) + "\n");
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Returns the patterns, as written. */
+    List<String> getPatterns() {
+        return lines;
+    }
+
+    /** Returns true if the file named NAME belongs in the working
+     *  directory. */
+    boolean includes(String name) {
+        if (!enabled) {
+            return true;
+        }
+        Path path = Path.of(name);
+        for (int i = matchers.size() - 1; i >= 0; i--) {
+            if (matchers.get(i).matches(path)) {
+                return !negated.get(i);
+            }
+        }
+        return false;
+    }
+}
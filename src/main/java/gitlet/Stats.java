@@ -0,0 +1,321 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static gitlet.Repository.BLOBS_DIR;
+import static gitlet.Repository.COMMIT_DIR;
+import static gitlet.Repository.COMMON_DIR;
+import static gitlet.Utils.*;
+
+/** Object store statistics, for "gitlet count-objects" and "gitlet stats".
+ *
+ *  count-objects reports the number and size on disk of the commits and
+ *  blobs in the repository's own store.  stats adds what is reachable from
+ *  the branches (and the stages of all working trees), the shape of the
+ *  history (merges, fan-out, depth), the number of files per commit and
+ *  the largest blobs.  Object files are read and measured in parallel;
+ *  the history is then analysed in memory.
+ *
+ *  Either prints a human-readable report, or with --json one JSON object,
+ *  so the numbers can be tracked over time.
+ */
+class Stats {
+
+    /** Number of largest blobs listed. */
+    private static final int LARGEST = 10;
+
+    private final Map<String, Commit> commits = new ConcurrentHashMap<>();
+    private final Map<String, Long> commitSizes = new ConcurrentHashMap<>();
+    private final Map<String, Long> blobSizes = new ConcurrentHashMap<>();
+    /** Report entries in order, as name and value; a value is a Long, a
+     *  Double, or for the largest blobs a list of {id, size} pairs. */
+    private final Map<String, Object> report = new LinkedHashMap<>();
+
+    /** Print statistics: all of them if FULL, only counts and sizes
+     *  otherwise; as JSON if JSON. */
+    static void run(boolean full, boolean json) {
+        Stats stats = new Stats();
+        stats.measure(full);
+        if (json) {
+            stats.printJson();
+        } else {
+            stats.printHuman();
+        }
+    }
+
+    private void measure(boolean full) {
+        List<String> commitIds = names(COMMIT_DIR);
+        List<String> blobIds = names(BLOBS_DIR);
+        Trace.begin("stats.read");
+        try {
+            commitIds.parallelStream().forEach(id -> {
+                File file = join(COMMIT_DIR, id);
+                commitSizes.put(id, file.length());
+                if (full) {
+                    commits.put(id, readObject(file, Commit.class));
+                }
+            });
+            blobIds.parallelStream().forEach(id -> blobSizes.put(id, join(BLOBS_DIR, id).length()));
+        } finally {
+            Trace.end();
+        }
+        long commitBytes = sum(commitSizes.values());
+        long blobBytes = sum(blobSizes.values());
+        report.put("commits", (long) commitIds.size());
+        report.put("commitBytes", commitBytes);
+        report.put("blobs", (long) blobIds.size());
+        report.put("blobBytes", blobBytes);
+        report.put("repositoryBytes", directorySize(COMMON_DIR));
+        if (!full) {
+            return;
+        }
+
+        Map<String, String> branches = new Refs(COMMON_DIR).all();
+        report.put("branches", (long) branches.size());
+        Trace.begin("stats.history");
+        try {
+            history(branches.values());
+        } finally {
+            Trace.end();
+        }
+
+        List<String> largest = new ArrayList<>(blobIds);
+        largest.sort(Comparator.comparing((String id) -> blobSizes.get(id)).reversed()
+                .thenComparing(Comparator.naturalOrder()));
+        List<Object[]> top = new ArrayList<>();
+        for (String id : largest.subList(0, Math.min(LARGEST, largest.size()))) {
+            top.add(new Object[] {id, blobSizes.get(id)});
+        }
+        report.put("largestBlobs", top);
+    }
+
+    /** Add to the report everything about the commits reachable from TIPS. */
+    private void history(Iterable<String> tips) {
+        // walk from the tips, children counted on the way
+        Set<String> reachable = new HashSet<>();
+        Set<String> reachableBlobs = new HashSet<>();
+        Map<String, Integer> children = new HashMap<>();
+        Deque<String> stack = new ArrayDeque<>();
+        tips.forEach(stack::push);
+        List<String> order = new ArrayList<>();
+        while (!stack.isEmpty()) {
+            String id = stack.pop();
+            Commit commit = commit(id);
+            if (commit == null || !reachable.add(id)) {
+                continue;
+            }
+            order.add(id);
+            reachableBlobs.addAll(commit.getBlobs().values());
+            for (String parentId : parents(id, commit)) {
+                children.merge(parentId, 1, Integer::sum);
+                stack.push(parentId);
+            }
+        }
+        for (File gitletDir : Worktree.all()) {
+            File stageFile = join(gitletDir, "stage", "stage.ser");
+            if (Transaction.exists(stageFile)) {
+                reachableBlobs.addAll(readObject(stageFile, Stage.class).additionMap.values());
+            }
+        }
+
+        // depth: longest chain of parents down to a root
+        Map<String, Long> depth = new HashMap<>();
+        for (int i = order.size() - 1; i >= 0; i--) {
+            computeDepth(order.get(i), depth);
+        }
+
+        long merges = 0;
+        long minFiles = Long.MAX_VALUE;
+        long maxFiles = 0;
+        long totalFiles = 0;
+        for (String id : reachable) {
+            Commit commit = commit(id);
+            if (commit.getSecondParent() != null) {
+                merges += 1;
+            }
+            int files = commit.getBlobs().size();
+            minFiles = Math.min(minFiles, files);
+            maxFiles = Math.max(maxFiles, files);
+            totalFiles += files;
+        }
+        long unreachableBlobBytes = 0;
+        long unreachableBlobs = 0;
+        for (Map.Entry<String, Long> entry : blobSizes.entrySet()) {
+            if (!reachableBlobs.contains(entry.getKey())) {
+                unreachableBlobs += 1;
+                unreachableBlobBytes += entry.getValue();
+            }
+        }
+        long unreachableCommits = commitSizes.keySet().stream().filter(id -> !reachable.contains(id)).count();
+
+        report.put("reachableCommits", (long) reachable.size());
+        report.put("reachableBlobs", (long) reachableBlobs.size());
+        report.put("unreachableCommits", unreachableCommits);
+        report.put("unreachableBlobs", unreachableBlobs);
+        report.put("unreachableBlobBytes", unreachableBlobBytes);
+        report.put("merges", merges);
+        report.put("branchPoints", children.values().stream().filter(n -> n > 1).count());
+        report.put("maxFanOut", (long) children.values().stream().mapToInt(n -> n).max().orElse(0));
+        report.put("maxDepth", depth.values().stream().mapToLong(d -> d).max().orElse(0));
+        report.put("minFilesPerCommit", reachable.isEmpty() ? 0 : minFiles);
+        report.put("avgFilesPerCommit", reachable.isEmpty() ? 0.0 : (double) totalFiles / reachable.size());
+        report.put("maxFilesPerCommit", maxFiles);
+    }
+
+    /** Fill in the depth of commit ID, and of its ancestors as needed,
+     *  without recursing. */
+    private void computeDepth(String id, Map<String, Long> depth) {
+        Deque<String> stack = new ArrayDeque<>();
+        stack.push(id);
+        while (!stack.isEmpty()) {
+            String current = stack.peek();
+            if (depth.containsKey(current)) {
+                stack.pop();
+                continue;
+            }
+            long deepest = 0;
+            boolean ready = true;
+            for (String parentId : parents(current, commit(current))) {
+                Long parentDepth = depth.get(parentId);
+                if (parentDepth == null && commit(parentId) != null) {
+                    stack.push(parentId);
+                    ready = false;
+                } else if (parentDepth != null) {
+                    deepest = Math.max(deepest, parentDepth);
+                }
+            }
+            if (ready) {
+                depth.put(current, deepest + 1);
+                stack.pop();
+            }
+        }
+    }
+
+    private List<String> parents(String id, Commit commit) {
+        List<String> parents = new ArrayList<>(2);
+        if (Shallow.parent(id, commit) != null) {
+            parents.add(commit.getParent());
+        }
+        if (Shallow.secondParent(id, commit) != null) {
+            parents.add(commit.getSecondParent());
+        }
+        return parents;
+    }
+
+    /** Returns commit ID, read here or from an alternate, or null if it is
+     *  missing. */
+    private Commit commit(String id) {
+        Commit commit = commits.get(id);
+        if (commit == null) {
+            File file = Alternates.commitFile(id);
+            if (!file.exists()) {
+                return null;
+            }
+            commit = readObject(file, Commit.class);
+            commits.put(id, commit);
+        }
+        return commit;
+    }
+
+    private void printHuman() {
+        System.out.printf("commits: %d (%s)%n", report.get("commits"), size(report.get("commitBytes")));
+        System.out.printf("blobs: %d (%s)%n", report.get("blobs"), size(report.get("blobBytes")));
+        System.out.printf("repository size: %s%n", size(report.get("repositoryBytes")));
+        if (!report.containsKey("branches")) {
+            return;
+        }
+        System.out.printf("branches: %d%n", report.get("branches"));
+        System.out.printf("reachable: %d commits, %d blobs%n",
+                report.get("reachableCommits"), report.get("reachableBlobs"));
+        System.out.printf("unreachable: %d commits, %d blobs (%s)%n", report.get("unreachableCommits"),
+                report.get("unreachableBlobs"), size(report.get("unreachableBlobBytes")));
+        System.out.printf("merges: %d%n", report.get("merges"));
+        System.out.printf("fan-out: %d branch points, at most %d children%n",
+                report.get("branchPoints"), report.get("maxFanOut"));
+        System.out.printf("depth: %d%n", report.get("maxDepth"));
+        System.out.printf("files per commit: min %d, avg %.1f, max %d%n", report.get("minFilesPerCommit"),
+                report.get("avgFilesPerCommit"), report.get("maxFilesPerCommit"));
+        System.out.println("largest blobs:");
+        for (Object[] blob : largestBlobs()) {
+            System.out.printf("  %s %s%n", blob[0], size(blob[1]));
+        }
+    }
+
+    private void printJson() {
+        StringBuilder out = new StringBuilder("{");
+        for (Map.Entry<String, Object> entry : report.entrySet()) {
+            if (out.length() > 1) {
+                out.append(',');
+            }
+            out.append('"').append(entry.getKey()).append("\":");
+            if (entry.getValue() instanceof List) {
+                out.append('[');
+                List<Object[]> blobs = largestBlobs();
+                for (int i = 0; i < blobs.size(); i++) {
+                    out.append(i > 0 ? "," : "").append("{\"id\":\"").append(blobs.get(i)[0])
+                        .append("\",\"bytes\":").append(blobs.get(i)[1]).append('}');
+                }
+                out.append(']');
+            } else if (entry.getValue() instanceof Double) {
+                out.append(String.format(Locale.ROOT, "%.2f", (Double) entry.getValue()));
+            } else {
+                out.append(entry.getValue());
+            }
+        }
+        System.out.println(out.append('}'));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object[]> largestBlobs() {
+        return (List<Object[]>) report.get("largestBlobs");
+    }
+
+    /* HELPERS */
+
+    private static String size(Object bytes) {
+        double value = (Long) bytes;
+        String[] units = {"bytes", "KiB", "MiB", "GiB"};
+        int unit = 0;
+        while (value >= 1024 && unit + 1 < units.length) {
+            value /= 1024;
+            unit += 1;
+        }
+        return unit == 0 ? bytes + " bytes" : String.format("%.1f %s", value, units[unit]);
+    }
+
+    private static long sum(Iterable<Long> values) {
+        long total = 0;
+        for (long value : values) {
+            total += value;
+        }
+        return total;
+    }
+
+    private static long directorySize(File dir) {
+        File[] files = dir.listFiles();
+        long total = 0;
+        if (files != null) {
+            for (File file : files) {
+                total += file.isDirectory() ? directorySize(file) : file.length();
+            }
+        }
+        return total;
+    }
+
+    private static List<String> names(File dir) {
+        List<String> names = plainFilenamesIn(dir);
+        return names == null ? List.of() : names;
+    }
+}
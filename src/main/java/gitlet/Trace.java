@@ -0,0 +1,283 @@
+package gitlet;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** Opt-in per-command performance tracing.
+ *
+ *  Tracing is turned on by the --trace[=FILE] option of Main or by the
+ *  GITLET_TRACE environment variable (a file name, or "stderr").  While on,
+ *  each begin(), end() pair records a timed span for a phase of the
+ *  command together with how much I/O and hashing happened inside it, and
+ *  when the JVM exits the spans are written in Chrome trace-event format,
+ *  e.g.
+ *
+ *      {"traceEvents": [{"name": "merge", "ph": "X", "ts": 0, "dur": 812,
+ *                        "args": {"objectReads": 12, ...}}, ...],
+ *       "otherData": {"command": "merge", "objectReads": 12, ...}}
+ *
+ *  which loads directly into chrome://tracing or Perfetto.  The counters
+ *  are cheap enough to be kept unconditionally.  Each thread has counters
+ *  of its own, and a span, shown under the id of the thread that began
+ *  it, counts only that thread's work: what fsck, stats, archive and the
+ *  working-tree walker hand to other threads shows in the command totals
+ *  of otherData, which add up every thread.  When tracing is off begin()
+ *  only pushes a shared no-op span.  A phase
+ *  is traced as
+ *
+ *      Trace.begin("merge.mergeFiles");
+ *      try {
+ *          ...
+ *      } finally {
+ *          Trace.end();
+ *      }
+ */
+class Trace {
+
+    /** Names of the counters, in the order of the COUNTS array. */
+    private static final String[] COUNTER_NAMES = {
+        "objectReads", "objectWrites", "bytesRead", "bytesWritten",
+        "sha1Calls", "sha1Bytes", "dirListings", "fsyncs"
+    };
+    private static final int OBJECT_READS = 0;
+    private static final int OBJECT_WRITES = 1;
+    private static final int BYTES_READ = 2;
+    private static final int BYTES_WRITTEN = 3;
+    private static final int SHA1_CALLS = 4;
+    private static final int SHA1_BYTES = 5;
+    private static final int DIR_LISTINGS = 6;
+    private static final int FSYNCS = 7;
+
+    /** The counters of every thread that has counted anything. */
+    private static final List<AtomicLongArray> allCounts = new ArrayList<>();
+
+    /** Running totals of the counters of each thread.  Atomic only so that
+     *  the final dump sees them; each is written by its own thread. */
+    private static final ThreadLocal<AtomicLongArray> counts = ThreadLocal.withInitial(() -> {
+        AtomicLongArray threadCounts = new AtomicLongArray(COUNTER_NAMES.length);
+        synchronized (allCounts) {
+            allCounts.add(threadCounts);
+        }
+        return threadCounts;
+    });
+
+    /** A span that records nothing, handed out while tracing is off. */
+    private static final Span NO_OP = new Span(null);
+
+    /** Finished spans, in order of completion. */
+    private static final List<Span> finished = new ArrayList<>();
+
+    /** Spans not closed yet.  A command that exits early leaves its
+     *  enclosing spans open; they are closed when the trace is dumped. */
+    private static final List<Span> open = new ArrayList<>();
+
+    /** The spans begun and not yet ended by each thread, innermost first. */
+    private static final ThreadLocal<Deque<Span>> current = ThreadLocal.withInitial(ArrayDeque::new);
+
+    private static boolean enabled;
+    private static String destination;
+    private static String command;
+    private static long origin;
+
+    /** Turn tracing on, writing the trace to DEST ("stderr" or a file
+     *  name) when the JVM exits. */
+    static void enable(String dest) {
+        if (enabled) {
+            return;
+        }
+        enabled = true;
+        destination = dest;
+        origin = System.nanoTime();
+        Runtime.getRuntime().addShutdownHook(new Thread(Trace::dump));
+    }
+
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Record NAME as the command being traced. */
+    static void setCommand(String name) {
+        command = name;
+    }
+
+    /** Start a span called NAME, to be ended by the matching end() on the
+     *  same thread. */
+    static void begin(String name) {
+        current.get().push(enabled ? new Span(name) : NO_OP);
+    }
+
+    /** End the span begun last on this thread. */
+    static void end() {
+        Span span = current.get().poll();
+        if (span != null) {
+            span.close();
+        }
+    }
+
+    /* COUNTERS */
+
+    static void objectRead(long bytes) {
+        counts.get().incrementAndGet(OBJECT_READS);
+        counts.get().addAndGet(BYTES_READ, bytes);
+    }
+
+    static void objectWritten(long bytes) {
+        counts.get().incrementAndGet(OBJECT_WRITES);
+        counts.get().addAndGet(BYTES_WRITTEN, bytes);
+    }
+
+    static void bytesRead(long bytes) {
+        counts.get().addAndGet(BYTES_READ, bytes);
+    }
+
+    static void bytesWritten(long bytes) {
+        counts.get().addAndGet(BYTES_WRITTEN, bytes);
+    }
+
+    static void sha1(long bytes) {
+        counts.get().incrementAndGet(SHA1_CALLS);
+        counts.get().addAndGet(SHA1_BYTES, bytes);
+    }
+
+    static void dirListing() {
+        counts.get().incrementAndGet(DIR_LISTINGS);
+    }
+
+    static void fsync() {
+        counts.get().incrementAndGet(FSYNCS);
+    }
+
+    /** Returns the current value of every counter in THREADCOUNTS. */
+    private static long[] snapshot(AtomicLongArray threadCounts) {
+        long[] values = new long[COUNTER_NAMES.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = threadCounts.get(i);
+        }
+        return values;
+    }
+
+    /** Returns the current value of every counter, summed over all
+     *  threads. */
+    private static long[] totalCounts() {
+        long[] values = new long[COUNTER_NAMES.length];
+        synchronized (allCounts) {
+            for (AtomicLongArray threadCounts : allCounts) {
+                for (int i = 0; i < values.length; i++) {
+                    values[i] += threadCounts.get(i);
+                }
+            }
+        }
+        return values;
+    }
+
+    /** A timed phase of a command. */
+    private static class Span {
+        private final String name;
+        private final long threadId;
+        /** The counters of the thread that began this span. */
+        private final AtomicLongArray threadCounts;
+        private final long start;
+        private final long[] startCounts;
+        private long end;
+        private long[] endCounts;
+
+        private Span(String name) {
+            this.name = name;
+            this.threadId = Thread.currentThread().getId();
+            this.threadCounts = name == null ? null : counts.get();
+            this.start = name == null ? 0 : System.nanoTime();
+            this.startCounts = name == null ? null : snapshot(threadCounts);
+            if (name != null) {
+                synchronized (finished) {
+                    open.add(this);
+                }
+            }
+        }
+
+        void close() {
+            if (name == null) {
+                return;
+            }
+            synchronized (finished) {
+                if (!open.remove(this)) {
+                    return;
+                }
+                end = System.nanoTime();
+                endCounts = snapshot(threadCounts);
+                finished.add(this);
+            }
+        }
+    }
+
+    /* OUTPUT */
+
+    /** Write all finished spans to the destination. */
+    private static synchronized void dump() {
+        StringBuilder out = new StringBuilder();
+        out.append("{\"traceEvents\": [");
+        String sep = "\n  ";
+        long pid = ProcessHandle.current().pid();
+        for (Span span : new ArrayList<>(open)) {
+            span.close();
+        }
+        synchronized (finished) {
+            for (Span span : finished) {
+                out.append(sep);
+                sep = ",\n  ";
+                out.append("{\"name\": ").append(quote(span.name))
+                    .append(", \"cat\": \"gitlet\", \"ph\": \"X\", \"pid\": ").append(pid)
+                    .append(", \"tid\": ").append(span.threadId).append(", \"ts\": ").append((span.start - origin) / 1000)
+                    .append(", \"dur\": ").append((span.end - span.start) / 1000)
+                    .append(", \"args\": {");
+                appendCounts(out, span.startCounts, span.endCounts);
+                out.append("}}");
+            }
+        }
+        out.append("\n], \"displayTimeUnit\": \"ms\", \"otherData\": {\"command\": ")
+            .append(quote(command == null ? "" : command)).append(", ");
+        appendCounts(out, new long[COUNTER_NAMES.length], totalCounts());
+        out.append("}}\n");
+
+        if (destination.equals("stderr")) {
+            System.err.print(out);
+            System.err.flush();
+        } else {
+            try (PrintStream str = new PrintStream(new File(destination),
+                    StandardCharsets.UTF_8)) {
+                str.print(out);
+            } catch (java.io.IOException excp) {
+                System.err.println("Cannot write trace: " + excp.getMessage());
+            }
+        }
+    }
+
+    private static void appendCounts(StringBuilder out, long[] from, long[] to) {
+        for (int i = 0; i < COUNTER_NAMES.length; i++) {
+            if (i > 0) {
+                out.append(", ");
+            }
+            out.append('"').append(COUNTER_NAMES[i]).append("\": ")
+                .append(to[i] - from[i]);
+        }
+    }
+
+    private static String quote(String str) {
+        StringBuilder result = new StringBuilder("\"");
+        for (char c : str.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < 0x20) {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.append('"').toString();
+    }
+}
@@ -0,0 +1,367 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+
+/** Group-committed, crash-safe writes for the duration of one command.
+ *
+ *  Objects (commits and blobs) are immutable and named by their hash.
+ *  Each is written to a temporary file right away, and the rest of the
+ *  command reads it from there: objectFile() maps its final name to the
+ *  temporary file.  Refs (branch files, HEAD, the stage) are buffered in
+ *  memory and reads of them are served from the buffer.  On commit, the
+ *  temporary files are fsynced as a batch, with nothing else in between,
+ *  then renamed to their final names, and each object directory is
+ *  flushed once.  Only then are the refs written and atomically renamed
+ *  over their old versions.  An object thus only ever appears under its
+ *  final name complete, so one that exists is never written again, and a
+ *  crash at any point leaves every ref either fully old or fully new,
+ *  never pointing at an object that did not reach the disk.
+ *
+ *  Outside of begin()/commit() every write is durable on its own.
+ */
+class Transaction {
+
+    /** Name of the directory holding temporary files inside a .gitlet
+     *  directory. */
+    static final String TMP_DIR_NAME = "tmp";
+
+    /** Largest write handed to the file channel at once, so that it
+     *  never copies a whole large object into a temporary direct buffer. */
+    private static final int WRITE_CHUNK = 8192;
+
+    /** True between begin() and commit(). */
+    private static boolean active;
+
+    /** Objects written since begin(), by final name, and the temporary
+     *  files holding them until commit(). */
+    private static final Map<Path, Path> pendingObjects = new LinkedHashMap<>();
+
+    /** New contents of refs, in write order.  A null value marks a ref
+     *  to be deleted. */
+    private static final Map<Path, byte[]> pendingRefs = new LinkedHashMap<>();
+
+    /** Start buffering writes until the next commit(). */
+    static void begin() {
+        active = true;
+    }
+
+    /** Returns true if a transaction is in progress. */
+    static boolean isActive() {
+        return active;
+    }
+
+    /** Make every write since begin() durable and publish the buffered
+     *  refs. */
+    static void commit() {
+        Trace.begin("transaction.commit");
+        try {
+            for (Path tmp : pendingObjects.values()) {
+                fsync(tmp);
+            }
+            Set<Path> dirs = new LinkedHashSet<>();
+            for (Map.Entry<Path, Path> object : pendingObjects.entrySet()) {
+                Files.move(object.getValue(), object.getKey(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+                dirs.add(object.getKey().getParent());
+            }
+            for (Path dir : dirs) {
+                fsyncDirectory(dir);
+            }
+
+            Map<Path, Path> renames = new LinkedHashMap<>();
+            for (Map.Entry<Path, byte[]> ref : pendingRefs.entrySet()) {
+                if (ref.getValue() != null) {
+                    Path tmp = writeTemp(ref.getKey(), ref.getValue());
+                    fsync(tmp);
+                    renames.put(tmp, ref.getKey());
+                }
+            }
+
+            dirs.clear();
+            for (Map.Entry<Path, Path> rename : renames.entrySet()) {
+                GitletEvents.RefUpdate event = new GitletEvents.RefUpdate();
+                event.begin();
+                Files.move(rename.getKey(), rename.getValue(),
+                        StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+                dirs.add(rename.getValue().getParent());
+                if (event.shouldCommit()) {
+                    event.ref = rename.getValue().toString();
+                    event.bytes = pendingRefs.get(rename.getValue()).length;
+                    event.commit();
+                }
+            }
+            for (Map.Entry<Path, byte[]> ref : pendingRefs.entrySet()) {
+                if (ref.getValue() == null) {
+                    GitletEvents.RefUpdate event = new GitletEvents.RefUpdate();
+                    event.begin();
+                    Files.deleteIfExists(ref.getKey());
+                    dirs.add(ref.getKey().getParent());
+                    if (event.shouldCommit()) {
+                        event.ref = ref.getKey().toString();
+                        event.deleted = true;
+                        event.commit();
+                    }
+                }
+            }
+            for (Path dir : dirs) {
+                fsyncDirectory(dir);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            pendingObjects.clear();
+            pendingRefs.clear();
+            active = false;
+            Trace.end();
+        }
+    }
+
+    /** Drop the objects and refs written since begin(). */
+    static void abort() {
+        for (Path tmp : pendingObjects.values()) {
+            tmp.toFile().delete();
+        }
+        pendingObjects.clear();
+        pendingRefs.clear();
+        active = false;
+    }
+
+    /* OBJECTS */
+
+    /** Write OBJ as the immutable object FILE.  Does nothing if FILE
+     *  already exists. */
+    static void writeObject(File file, Serializable obj) {
+        if (!isWritten(file)) {
+            writeObjectContents(file, Utils.serialize(obj));
+        }
+    }
+
+    /** Write the concatenation of PARTS as the immutable object FILE, one
+     *  part after the other, without joining them in memory.  Does nothing
+     *  if FILE already exists. */
+    static void writeObjectContents(File file, byte[]... parts) {
+        if (isWritten(file)) {
+            return;
+        }
+        Path target = key(file);
+        GitletEvents.ObjectWrite event = new GitletEvents.ObjectWrite();
+        event.begin();
+        try {
+            Path tmp = writeTemp(target, parts);
+            Trace.objectWritten(0);
+            if (active) {
+                pendingObjects.put(target, tmp);
+            } else {
+                fsync(tmp);
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+                fsyncDirectory(target.getParent());
+            }
+            if (event.shouldCommit()) {
+                event.id = file.getName();
+                event.kind = GitletEvents.kindOf(file);
+                event.bytes = length(parts);
+                event.commit();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the file to read the object FILE from: the temporary file
+     *  holding it if it was written in this transaction, else FILE. */
+    static File objectFile(File file) {
+        if (pendingObjects.isEmpty()) {
+            return file;
+        }
+        Path tmp = pendingObjects.get(key(file));
+        return tmp != null ? tmp.toFile() : file;
+    }
+
+    /* REFS */
+
+    /** Replace the ref FILE by the concatenation of CONTENTS, each of which
+     *  may be a String or a byte array, as for Utils.writeContents. */
+    static void writeRef(File file, Object... contents) {
+        if (file.isDirectory()) {
+            throw new IllegalArgumentException("cannot overwrite directory");
+        }
+        byte[] bytes = Utils.concat(contents);
+        if (active) {
+            pendingRefs.put(key(file), bytes);
+            return;
+        }
+        GitletEvents.RefUpdate event = new GitletEvents.RefUpdate();
+        event.begin();
+        try {
+            Path target = key(file);
+            Path tmp = writeTemp(target, bytes);
+            fsync(tmp);
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            fsyncDirectory(target.getParent());
+            if (event.shouldCommit()) {
+                event.ref = target.toString();
+                event.bytes = bytes.length;
+                event.commit();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Delete the ref FILE. */
+    static void deleteRef(File file) {
+        if (active) {
+            pendingRefs.put(key(file), null);
+        } else {
+            file.delete();
+        }
+    }
+
+    /** Returns true if FILE exists, taking buffered refs into account. */
+    static boolean exists(File file) {
+        Path path = key(file);
+        if (pendingRefs.containsKey(path)) {
+            return pendingRefs.get(path) != null;
+        }
+        return file.exists();
+    }
+
+    /** Returns the names of the plain files in the directory DIR, sorted,
+     *  taking buffered refs into account. */
+    static List<String> filenamesIn(File dir) {
+        TreeSet<String> names = new TreeSet<>();
+        List<String> existing = Utils.plainFilenamesIn(dir);
+        if (existing != null) {
+            names.addAll(existing);
+        }
+        Path parent = key(dir);
+        for (Map.Entry<Path, byte[]> ref : pendingRefs.entrySet()) {
+            if (parent.equals(ref.getKey().getParent())) {
+                String name = ref.getKey().getFileName().toString();
+                if (ref.getValue() == null) {
+                    names.remove(name);
+                } else {
+                    names.add(name);
+                }
+            }
+        }
+        return new ArrayList<>(names);
+    }
+
+    /** Returns the buffered contents of the ref FILE, or null if FILE has
+     *  not been written in this transaction. */
+    static byte[] pendingContents(File file) {
+        Path path = key(file);
+        if (!pendingRefs.containsKey(path)) {
+            return null;
+        }
+        byte[] contents = pendingRefs.get(path);
+        if (contents == null) {
+            throw new IllegalArgumentException(file.getPath() + " was deleted");
+        }
+        return contents;
+    }
+
+    /* HELPERS */
+
+    /** Returns true if the object FILE exists or was written in this
+     *  transaction.  FILE may also be the temporary file of one. */
+    private static boolean isWritten(File file) {
+        return file.exists() || pendingObjects.containsKey(key(file));
+    }
+
+    private static Path key(File file) {
+        return file.getAbsoluteFile().toPath().normalize();
+    }
+
+    /** Write CONTENTS to a fresh temporary file on the same file system as
+     *  TARGET and return its path.  Temporary files live in the tmp
+     *  directory of the enclosing .gitlet directory so that they never
+     *  show up in object or branch listings.  They get the default
+     *  permissions of a new file, as Utils.writeContents does, so that
+     *  other users of shared, borrowed or hard-linked stores can read them. */
+    private static Path writeTemp(Path target, byte[]... parts)
+        throws IOException {
+        Path dir = tmpDirFor(target);
+        Files.createDirectories(dir);
+        Path tmp;
+        while (true) {
+            tmp = dir.resolve(target.getFileName() + "."
+                    + Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), 36) + ".tmp");
+            try {
+                Files.createFile(tmp);
+                break;
+            } catch (FileAlreadyExistsException excp) {
+                // try another name
+            }
+        }
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            for (byte[] part : parts) {
+                for (int off = 0; off < part.length; off += WRITE_CHUNK) {
+                    out.write(part, off, Math.min(WRITE_CHUNK, part.length - off));
+                }
+            }
+        }
+        Trace.bytesWritten(length(parts));
+        return tmp;
+    }
+
+    /** Returns the total length of PARTS. */
+    private static long length(byte[]... parts) {
+        long length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        return length;
+    }
+
+    private static Path tmpDirFor(Path target) {
+        for (Path dir = target.getParent(); dir != null; dir = dir.getParent()) {
+            if (dir.getFileName() != null
+                    && dir.getFileName().toString().equals(".gitlet")) {
+                return dir.resolve(TMP_DIR_NAME);
+            }
+        }
+        return target.getParent().resolve(TMP_DIR_NAME);
+    }
+
+    private static void fsync(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.WRITE)) {
+            channel.force(true);
+            Trace.fsync();
+        }
+    }
+
+    /** Flush the directory entries of DIR.  Not every platform allows a
+     *  directory to be opened, in which case this is a no-op. */
+    private static void fsyncDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir,
+                StandardOpenOption.READ)) {
+            channel.force(true);
+            Trace.fsync();
+        } catch (IOException excp) {
+            // best effort
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static gitlet.Repository.CWD;
+import static gitlet.Utils.*;
+
+/** Lists the files of the working tree, recursively and in parallel.
+ *
+ *  Paths are relative to the working directory, with "/" between their
+ *  parts, and come back sorted, in the order of the TreeMaps that hold
+ *  commit blob maps.  Each directory is read with one DirectoryStream by
+ *  a task of its own, which forks a task for each subdirectory on a
+ *  shared ForkJoinPool.
+ *
+ *  A symbolic link to a file counts as that file, as File.isFile has it,
+ *  but links to directories are not followed, so the walk cannot loop.
+ *
+ *  Ignored paths are dropped during the descent, so an ignored directory
+ *  is never read at all.  Always ignored are .gitlet and other names
+ *  starting with ".gitlet-", and any directory holding a .gitlet of its
+ *  own (another repository, or a linked working tree).  .gitletignore in
+ *  the working directory adds glob patterns, one per line: a pattern
+ *  without "/" matches the last part of a path at any depth, one with a
+ *  "/" matches the whole path (a leading "/" is dropped), and a trailing
+ *  "/" limits it to directories.  As for sparse checkout, "!" negates a
+ *  pattern and the last matching pattern wins.  Blank lines and lines
+ *  starting with "#" are ignored.
+ */
+class TreeWalker {
+
+    static final String IGNORE_FILE_NAME = ".gitletignore";
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    /** Returns every file of the working tree that is not ignored. */
+    static List<String> list() {
+        return list("");
+    }
+
+    /** Returns every file of the working tree that is not ignored, under
+     *  the directory DIR (relative to the working directory; "" for all). */
+    static List<String> list(String dir) {
+        return list(dir, Rules.load());
+    }
+
+    /** As list(DIR), with the ignore rules RULES.  An excluded DIR has no
+     *  files. */
+    static List<String> list(String dir, Rules rules) {
+        Path start = dir.isEmpty() ? CWD.toPath() : join(CWD, dir).toPath();
+        if (!Files.isDirectory(start) || (!dir.isEmpty() && rules.excludes(dir, true))) {
+            return new ArrayList<>();
+        }
+        List<String> files = POOL.invoke(new Walk(start, dir.isEmpty() ? "" : dir + "/", rules));
+        files.sort(null);
+        return files;
+    }
+
+    /** Lists one directory, and its subdirectories by forking. */
+    private static class Walk extends RecursiveTask<List<String>> {
+        private static final long serialVersionUID = 2960547305914826103L;
+
+        private final Path dir;
+        /** The relative path of DIR followed by "/", or "". */
+        private final String prefix;
+        private final Rules rules;
+
+        Walk(Path dir, String prefix, Rules rules) {
+            this.dir = dir;
+            this.prefix = prefix;
+            this.rules = rules;
+        }
+
+        @Override
+        protected List<String> compute() {
+            List<String> files = new ArrayList<>();
+            List<Walk> subdirs = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                Trace.dirListing();
+                for (Path entry : entries) {
+                    String path = prefix + entry.getFileName();
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        if (!rules.ignores(path, true) && !Files.exists(entry.resolve(".gitlet"))) {
+                            subdirs.add(new Walk(entry, path + "/", rules));
+                        }
+                    } else if (Files.isRegularFile(entry) && !rules.ignores(path, false)) {
+                        files.add(path);
+                    }
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            invokeAll(subdirs);
+            for (Walk subdir : subdirs) {
+                files.addAll(subdir.join());
+            }
+            return files;
+        }
+    }
+
+    /** The ignore rules of the working tree, as read from .gitletignore
+     *  by load(). */
+    static class Rules {
+        private final List<PathMatcher> matchers = new ArrayList<>();
+        private final List<Boolean> negated = new ArrayList<>();
+        private final List<Boolean> dirOnly = new ArrayList<>();
+        /** Whether the pattern matches whole paths rather than names. */
+        private final List<Boolean> anchored = new ArrayList<>();
+
+        static Rules load() {
+            Rules rules = new Rules();
+            File file = join(CWD, IGNORE_FILE_NAME);
+            if (!file.isFile()) {
+                return rules;
+            }
+            for (String line : readContentsAsString(file).lines().toList()) {
+                String pattern = line.trim();
+                if (pattern.isEmpty() || pattern.startsWith("#")) {
+                    continue;
+                }
+                boolean negate = pattern.startsWith("!");
+                if (negate) {
+                    pattern = pattern.substring(1);
+                }
+                boolean directory = pattern.endsWith("/");
+                if (directory) {
+                    pattern = pattern.substring(0, pattern.length() - 1);
+                }
+                boolean anchor = pattern.contains("/");
+                if (pattern.startsWith("/")) {
+                    pattern = pattern.substring(1);
+                }
+                if (pattern.isEmpty()) {
+                    continue;
+                }
+                rules.matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+                rules.negated.add(negate);
+                rules.dirOnly.add(directory);
+                rules.anchored.add(anchor);
+            }
+            return rules;
+        }
+
+        /** Returns true if the walk leaves out PATH, a directory if
+         *  ISDIRECTORY: it or a directory above it is ignored or holds a
+         *  repository of its own. */
+        boolean excludes(String path, boolean isDirectory) {
+            for (int slash = path.indexOf('/'); slash >= 0; slash = path.indexOf('/', slash + 1)) {
+                if (skipsDirectory(path.substring(0, slash))) {
+                    return true;
+                }
+            }
+            return isDirectory ? skipsDirectory(path) : ignores(path, false);
+        }
+
+        private boolean skipsDirectory(String dir) {
+            return ignores(dir, true) || join(CWD, dir, ".gitlet").exists();
+        }
+
+        /** Returns true if PATH, a directory if ISDIRECTORY, is ignored
+         *  itself. */
+        boolean ignores(String path, boolean isDirectory) {
+            String name = path.substring(path.lastIndexOf('/') + 1);
+            if (name.equals(".gitlet") || name.startsWith(".gitlet-")) {
+                return true;
+            }
+            boolean ignored = false;
+            Path whole = Path.of(path);
+            Path last = Path.of(name);
+            for (int i = 0; i < matchers.size(); i++) {
+                if (dirOnly.get(i) && !isDirectory) {
+                    continue;
+                }
+                if (matchers.get(i).matches(anchored.get(i) ? whole : last)) {
+                    ignored = !negated.get(i);
+                }
+            }
+            return ignored;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package gitlet;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -36,21 +38,32 @@ class Utils {
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
+        GitletEvents.Hash event = new GitletEvents.Hash();
+        event.begin();
         try {
             MessageDigest md = MessageDigest.getInstance("SHA-1");
+            long length = 0;
             for (Object val : vals) {
                 if (val instanceof byte[]) {
                     md.update((byte[]) val);
+                    length += ((byte[]) val).length;
                 } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+                    byte[] bytes = ((String) val).getBytes(StandardCharsets.UTF_8);
+                    md.update(bytes);
+                    length += bytes.length;
                 } else {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
             }
+            Trace.sha1(length);
             Formatter result = new Formatter();
             for (byte b : md.digest()) {
                 result.format("%02x", b);
             }
+            if (event.shouldCommit()) {
+                event.bytes = length;
+                event.commit();
+            }
             return result.toString();
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
@@ -94,11 +107,24 @@ class Utils {
      *  be a normal file.  Throws IllegalArgumentException
      *  in case of problems. */
     static byte[] readContents(File file) {
+        byte[] pending = Transaction.pendingContents(file);
+        if (pending != null) {
+            return pending;
+        }
         if (!file.isFile()) {
             throw new IllegalArgumentException("must be a normal file");
         }
+        GitletEvents.FileRead event = new GitletEvents.FileRead();
+        event.begin();
         try {
-            return Files.readAllBytes(file.toPath());
+            byte[] contents = Files.readAllBytes(file.toPath());
+            Trace.bytesRead(contents.length);
+            if (event.shouldCommit()) {
+                event.path = file.getPath();
+                event.bytes = contents.length;
+                event.commit();
+            }
+            return contents;
         } catch (IOException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -116,6 +142,8 @@ class Utils {
      *  either a String or a byte array.  Throws IllegalArgumentException
      *  in case of problems. */
     static void writeContents(File file, Object... contents) {
+        GitletEvents.FileWrite event = new GitletEvents.FileWrite();
+        event.begin();
         try {
             if (file.isDirectory()) {
                 throw
@@ -123,6 +151,26 @@ class Utils {
             }
             BufferedOutputStream str =
                 new BufferedOutputStream(Files.newOutputStream(file.toPath()));
+            byte[] bytes = concat(contents);
+            str.write(bytes);
+            str.close();
+            Trace.bytesWritten(bytes.length);
+            if (event.shouldCommit()) {
+                event.path = file.getPath();
+                event.bytes = bytes.length;
+                event.commit();
+            }
+        } catch (IOException | ClassCastException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the concatenation of CONTENTS, each of which may be either a
+     *  String or a byte array, as a byte array.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static byte[] concat(Object... contents) {
+        try {
+            ByteArrayOutputStream str = new ByteArrayOutputStream();
             for (Object obj : contents) {
                 if (obj instanceof byte[]) {
                     str.write((byte[]) obj);
@@ -130,7 +178,7 @@ class Utils {
                     str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
                 }
             }
-            str.close();
+            return str.toByteArray();
         } catch (IOException | ClassCastException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -140,11 +188,21 @@ class Utils {
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
                                                  Class<T> expectedClass) {
-        try {
-            ObjectInputStream in =
-                new ObjectInputStream(new FileInputStream(file));
+        GitletEvents.ObjectRead event = new GitletEvents.ObjectRead();
+        event.begin();
+        byte[] pending = Transaction.pendingContents(file);
+        long size = pending != null ? pending.length : file.length();
+        try (ObjectInputStream in = new ObjectInputStream(pending != null
+                ? new ByteArrayInputStream(pending)
+                : new BufferedInputStream(new FileInputStream(file)))) {
             T result = expectedClass.cast(in.readObject());
-            in.close();
+            Trace.objectRead(size);
+            if (event.shouldCommit()) {
+                event.id = file.getName();
+                event.kind = GitletEvents.kindOf(file);
+                event.bytes = size;
+                event.commit();
+            }
             return result;
         } catch (IOException | ClassCastException
                  | ClassNotFoundException excp) {
@@ -154,7 +212,16 @@ class Utils {
 
     /** Write OBJ to FILE. */
     static void writeObject(File file, Serializable obj) {
-        writeContents(file, serialize(obj));
+        GitletEvents.ObjectWrite event = new GitletEvents.ObjectWrite();
+        event.begin();
+        byte[] bytes = serialize(obj);
+        writeContents(file, bytes);
+        if (event.shouldCommit()) {
+            event.id = file.getName();
+            event.kind = GitletEvents.kindOf(file);
+            event.bytes = bytes.length;
+            event.commit();
+        }
     }
 
     /* DIRECTORIES */
@@ -172,6 +239,7 @@ class Utils {
      *  lexicographic order as Java Strings.  Returns null if DIR does
      *  not denote a directory. */
     static List<String> plainFilenamesIn(File dir) {
+        Trace.dirListing();
         String[] files = dir.list(PLAIN_FILES);
         if (files == null) {
             return null;
@@ -0,0 +1,317 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static gitlet.Repository.CWD;
+import static gitlet.Repository.GITLET_DIR;
+import static gitlet.Utils.*;
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/** Optional file-system watcher that lets status and the untracked-file
+ *  checks look only at working files that changed since the last command.
+ *
+ *  "gitlet watch" runs a WatchService on every directory of the working
+ *  tree that TreeWalker does not skip, and appends the path of every file
+ *  or directory that is created, changed or deleted to .gitlet/watch/dirty.
+ *  Commands call snapshot(), which keeps a persisted map from working file
+ *  path to blob id and re-examines only the dirty paths; a dirty directory
+ *  is listed again as a whole, and a change to .gitletignore means a full
+ *  scan.  Ignored directories are not watched at all.  The snapshot is tied to the watcher that
+ *  was running when it was made; if that watcher is gone, events were
+ *  dropped (OVERFLOW), or the dirty list grew too long, the next call does
+ *  a full scan instead.
+ *
+ *  Events arrive asynchronously, so before trusting the dirty list a
+ *  command creates a cookie file in the working directory and waits for
+ *  the watcher to report it: every change made before the cookie is then
+ *  already in the list.
+ */
+class Watcher {
+
+    static final File WATCH_DIR = join(GITLET_DIR, "watch");
+    /** Identifies the running watcher: "PID START-TIME". */
+    static final File PID_FILE = join(WATCH_DIR, "pid");
+    /** Paths of changed files and directories, one per line. */
+    static final File DIRTY_FILE = join(WATCH_DIR, "dirty");
+    /** Present if events may have been lost. */
+    static final File OVERFLOW_FILE = join(WATCH_DIR, "overflow");
+    static final File SNAPSHOT_FILE = join(WATCH_DIR, "snapshot");
+    /** Guards DIRTY_FILE and OVERFLOW_FILE between processes. */
+    static final File LOCK_FILE = join(WATCH_DIR, "lock");
+
+    /** Prefix of the cookie files used to synchronize with the watcher. */
+    private static final String COOKIE_PREFIX = ".gitlet-cookie-";
+    /** How long to wait for a cookie to show up, in milliseconds. */
+    private static final long SYNC_TIMEOUT = 2000;
+    /** Past this size the dirty list is dropped in favor of a full scan. */
+    private static final long MAX_DIRTY_BYTES = 1 << 20;
+
+    /** The persisted view of the working directory. */
+    private static class Snapshot implements Serializable {
+        private static final long serialVersionUID = 4118062731553917251L;
+
+        /** Contents of PID_FILE when this snapshot was taken. */
+        String watcher;
+        /** Blob id of every file in the working tree. */
+        TreeMap<String, String> files = new TreeMap<>();
+    }
+
+    /** Watch the working directory until killed. */
+    static void run() {
+        try (WatchService service = FileSystems.getDefault().newWatchService()) {
+            if (service.getClass().getName().contains("Polling")) {
+                throw error("File watching is not supported on this platform.");
+            }
+            WATCH_DIR.mkdir();
+            if (PID_FILE.exists() && isAlive(readContentsAsString(PID_FILE))) {
+                throw error("A watcher is already running.");
+            }
+            Map<WatchKey, Path> dirs = new HashMap<>();
+            TreeWalker.Rules rules = TreeWalker.Rules.load();
+            register(service, CWD.toPath(), dirs, rules);
+
+            String token = ProcessHandle.current().pid() + " "
+                + ProcessHandle.current().info().startInstant().map(Object::toString).orElse("");
+            writeContents(PID_FILE, token);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                if (PID_FILE.exists() && readContentsAsString(PID_FILE).equals(token)) {
+                    PID_FILE.delete();
+                }
+            }));
+
+            while (true) {
+                WatchKey key = service.take();
+                Path dir = dirs.get(key);
+                StringBuilder names = new StringBuilder();
+                boolean overflow = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW || dir == null) {
+                        overflow = true;
+                        continue;
+                    }
+                    Path child = dir.resolve((Path) event.context());
+                    String name = relativePath(child);
+                    if (name.equals(".gitlet")) {
+                        continue;
+                    }
+                    if (name.equals(TreeWalker.IGNORE_FILE_NAME)) {
+                        // directories no longer ignored need watching too
+                        rules = TreeWalker.Rules.load();
+                        register(service, CWD.toPath(), dirs, rules);
+                    } else if (event.kind() == ENTRY_CREATE && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)
+                            && !rules.excludes(name, true)) {
+                        // files may have landed in it before it was registered
+                        register(service, child, dirs, rules);
+                    }
+                    names.append(name).append('\n');
+                }
+                record(names.toString(), overflow);
+                if (!key.reset()) {
+                    dirs.remove(key);
+                    if (dirs.isEmpty()) {
+                        return;
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Returns the blob id of every file in the working tree, by path, if
+     *  a watcher is running; otherwise returns null and the caller should
+     *  scan the working tree itself. */
+    static Map<String, String> snapshot() {
+        String watcher;
+        try {
+            watcher = readContentsAsString(PID_FILE);
+        } catch (IllegalArgumentException excp) {
+            return null;
+        }
+        if (!isAlive(watcher) || !sync()) {
+            return null;
+        }
+        try (FileChannel channel = openLock()) {
+            // released when the channel is closed
+            channel.lock();
+            Snapshot snapshot = readSnapshot();
+            List<String> dirty = DIRTY_FILE.exists()
+                ? readContentsAsString(DIRTY_FILE).lines().toList() : List.of();
+
+            TreeWalker.Rules rules = TreeWalker.Rules.load();
+            if (snapshot == null || !snapshot.watcher.equals(watcher)
+                    || OVERFLOW_FILE.exists() || dirty.contains(TreeWalker.IGNORE_FILE_NAME)) {
+                snapshot = fullScan(watcher, rules);
+            } else {
+                Set<String> names = new LinkedHashSet<>(dirty);
+                for (String name : names) {
+                    if (name.startsWith(COOKIE_PREFIX)) {
+                        continue;
+                    }
+                    File file = join(CWD, name);
+                    snapshot.files.remove(name);
+                    snapshot.files.subMap(name + "/", name + "0").clear();
+                    if (rules.excludes(name, file.isDirectory())) {
+                        continue;
+                    }
+                    if (file.isFile()) {
+                        snapshot.files.put(name, sha1((Object) readContents(file)));
+                    } else if (file.isDirectory()) {
+                        for (String path : TreeWalker.list(name, rules)) {
+                            snapshot.files.put(path, sha1((Object) readContents(join(CWD, path))));
+                        }
+                    }
+                }
+            }
+
+            saveSnapshot(snapshot);
+            Files.deleteIfExists(DIRTY_FILE.toPath());
+            Files.deleteIfExists(OVERFLOW_FILE.toPath());
+            return snapshot.files;
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /* HELPERS */
+
+    /** Watch DIR and the directories under it that the ignore rules RULES
+     *  do not exclude, remembering each one in DIRS by its key. */
+    private static void register(WatchService service, Path dir, Map<WatchKey, Path> dirs,
+                                 TreeWalker.Rules rules) throws IOException {
+        dirs.put(dir.register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            for (Path entry : entries) {
+                if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)
+                        && !rules.excludes(relativePath(entry), true)) {
+                    register(service, entry, dirs, rules);
+                }
+            }
+        }
+    }
+
+    /** Returns the path of FILE relative to the working directory, with
+     *  "/" between its parts. */
+    private static String relativePath(Path file) {
+        return CWD.toPath().relativize(file).toString().replace(File.separatorChar, '/');
+    }
+
+    /** Append NAMES to the dirty list, or mark an overflow if OVERFLOW or
+     *  the list has grown too long. */
+    private static void record(String names, boolean overflow) throws IOException {
+        try (FileChannel channel = openLock()) {
+            // released when the channel is closed
+            channel.lock();
+            if (overflow || DIRTY_FILE.length() > MAX_DIRTY_BYTES) {
+                Files.write(OVERFLOW_FILE.toPath(), new byte[0]);
+            }
+            if (!names.isEmpty()) {
+                try (FileChannel dirty = FileChannel.open(DIRTY_FILE.toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    dirty.write(ByteBuffer.wrap(names.getBytes(StandardCharsets.UTF_8)));
+                }
+            }
+        }
+    }
+
+    /** Wait until the watcher has caught up with every change made before
+     *  this call.  Returns false if it did not do so in time. */
+    private static boolean sync() {
+        String name = COOKIE_PREFIX + ProcessHandle.current().pid() + "-" + System.nanoTime();
+        File cookie = join(CWD, name);
+        try {
+            if (!cookie.createNewFile()) {
+                return false;
+            }
+            long deadline = System.currentTimeMillis() + SYNC_TIMEOUT;
+            while (System.currentTimeMillis() < deadline) {
+                if (DIRTY_FILE.exists() && readContentsAsString(DIRTY_FILE).contains(name)) {
+                    return true;
+                }
+                Thread.sleep(1);
+            }
+            return false;
+        } catch (IOException | IllegalArgumentException excp) {
+            return false;
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            cookie.delete();
+        }
+    }
+
+    private static Snapshot fullScan(String watcher, TreeWalker.Rules rules) {
+        Snapshot snapshot = new Snapshot();
+        snapshot.watcher = watcher;
+        for (String name : TreeWalker.list("", rules)) {
+            snapshot.files.put(name, sha1((Object) readContents(join(CWD, name))));
+        }
+        return snapshot;
+    }
+
+    /** Returns the saved snapshot, or null if there is none or it cannot
+     *  be read (e.g. it was saved by another version of gitlet). */
+    private static Snapshot readSnapshot() {
+        if (!SNAPSHOT_FILE.exists()) {
+            return null;
+        }
+        try {
+            return readObject(SNAPSHOT_FILE, Snapshot.class);
+        } catch (IllegalArgumentException excp) {
+            return null;
+        }
+    }
+
+    /** Replace the snapshot at once, independently of any transaction:
+     *  the dirty list it absorbed is about to be deleted. */
+    private static void saveSnapshot(Snapshot snapshot) throws IOException {
+        Path tmp = Files.createTempFile(WATCH_DIR.toPath(), "snapshot", ".tmp");
+        Files.write(tmp, serialize(snapshot));
+        Files.move(tmp, SNAPSHOT_FILE.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static FileChannel openLock() throws IOException {
+        return FileChannel.open(LOCK_FILE.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+    }
+
+    /** Returns true if the watcher identified by TOKEN is still running. */
+    private static boolean isAlive(String token) {
+        String[] parts = token.split(" ", 2);
+        try {
+            return ProcessHandle.of(Long.parseLong(parts[0]))
+                .filter(ProcessHandle::isAlive)
+                .map(p -> p.info().startInstant().map(Object::toString).orElse(""))
+                .map(start -> parts.length > 1 && start.equals(parts[1]))
+                .orElse(false);
+        } catch (NumberFormatException excp) {
+            return false;
+        }
+    }
+}
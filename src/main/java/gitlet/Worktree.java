@@ -0,0 +1,85 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static gitlet.Repository.COMMON_DIR;
+import static gitlet.Repository.GITLET_DIR;
+import static gitlet.Utils.*;
+
+/** Linked working trees, made by "gitlet worktree add".
+ *
+ *  A linked working tree has a .gitlet directory of its own that holds
+ *  only what belongs to one checkout: its HEAD, its stage and its
+ *  sparse-checkout patterns.  Its file "commondir" names the .gitlet
+ *  directory of the main working tree, where the commits, blobs, branches
+ *  and remotes of all of them live.  The main .gitlet directory lists the
+ *  linked ones in worktrees/, one file per working tree holding the path
+ *  of its .gitlet directory; a working tree that has been deleted is
+ *  simply skipped.
+ *
+ *  A branch is checked out in at most one working tree at a time, so
+ *  that committing in one never changes the files another has out.
+ */
+class Worktree {
+
+    static final String COMMONDIR_NAME = "commondir";
+    static final File WORKTREES_DIR = join(COMMON_DIR, "worktrees");
+
+    /** Returns the .gitlet directories of every working tree that still
+     *  exists, the main one first. */
+    static List<File> all() {
+        List<File> dirs = new ArrayList<>();
+        dirs.add(COMMON_DIR);
+        List<String> names = plainFilenamesIn(WORKTREES_DIR);
+        if (names != null) {
+            for (String name : names) {
+                File dir = new File(readContentsAsString(join(WORKTREES_DIR, name)));
+                if (join(dir, COMMONDIR_NAME).isFile()) {
+                    dirs.add(dir);
+                }
+            }
+        }
+        return dirs;
+    }
+
+    /** Returns the branch checked out in the working tree whose .gitlet
+     *  directory is GITLETDIR. */
+    static String branchOf(File gitletDir) {
+        return readContentsAsString(join(gitletDir, "refs", "HEAD"));
+    }
+
+    /** Returns the .gitlet directory of the working tree, other than this
+     *  one, that has branch BRANCHNAME checked out, or null if none has. */
+    static File checkedOutElsewhere(String branchName) {
+        File self = canonical(GITLET_DIR);
+        for (File dir : all()) {
+            if (!canonical(dir).equals(self) && branchOf(dir).equals(branchName)) {
+                return dir;
+            }
+        }
+        return null;
+    }
+
+    /** Record the working tree whose .gitlet directory is GITLETDIR as
+     *  linked to this repository, under a name not yet in use. */
+    static void register(File gitletDir) {
+        String base = gitletDir.getParentFile().getName();
+        String name = base;
+        for (int i = 2; join(WORKTREES_DIR, name).exists(); i++) {
+            name = base + "-" + i;
+        }
+        WORKTREES_DIR.mkdir();
+        Transaction.writeRef(join(WORKTREES_DIR, name), canonical(gitletDir).getPath());
+    }
+
+    static File canonical(File file) {
+        try {
+            return file.getCanonicalFile();
+        } catch (IOException excp) {
+            return file.getAbsoluteFile();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package gitlet;
+
+import java.io.File;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AlternatesTest {
+
+    @TempDir
+    File tmp;
+
+    /** A repository with a.txt committed as "1\n" and then as "2\n". */
+    private TestRepo source() {
+        TestRepo source = TestRepo.init(new File(tmp, "source"), "a.txt", "1\n");
+        source.write("a.txt", "2\n");
+        source.batch("add a.txt", "commit two");
+        return source;
+    }
+
+    private static String gitletDir(TestRepo repo) {
+        return repo.file(".gitlet").getAbsolutePath();
+    }
+
+    @Test
+    void shortIdsFindBorrowedCommits() {
+        TestRepo source = source();
+        String two = source.branch("master");
+        String one = source.run("log", "-n", "2").lines()
+            .filter(line -> line.startsWith("commit ")).skip(1).findFirst().orElseThrow().substring(7);
+        TestRepo middle = new TestRepo(new File(tmp, "middle"));
+        middle.batch("init", "add-alternate " + gitletDir(source));
+        TestRepo repo = new TestRepo(new File(tmp, "repo"));
+        repo.batch("init", "add-alternate " + gitletDir(middle));
+
+        repo.run("reset", two.substring(0, 8));
+        assertEquals(two, repo.branch("master"));
+        assertEquals("2\n", repo.read("a.txt"));
+        assertFalse(repo.exists(".gitlet/commits/" + two));
+        repo.run("checkout", one.substring(0, 8), "--", "a.txt");
+        assertEquals("1\n", repo.read("a.txt"));
+    }
+
+    @Test
+    void promisorRemoteLendsBlobsOfItsAlternates() {
+        TestRepo source = source();
+        TestRepo remote = new TestRepo(new File(tmp, "remote"));
+        remote.batch("init", "add-alternate " + gitletDir(source), "reset " + source.branch("master"));
+        TestRepo repo = new TestRepo(new File(tmp, "repo"));
+        repo.batch("init", "add-remote origin " + gitletDir(remote));
+
+        repo.run("fetch", "origin", "master", "--filter=blob:none");
+        String out = repo.run("checkout", "origin__master");
+        assertFalse(out.contains("missing"), out);
+        assertEquals("2\n", repo.read("a.txt"));
+    }
+}
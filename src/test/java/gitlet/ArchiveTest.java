@@ -0,0 +1,70 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArchiveTest {
+
+    @TempDir
+    File tmp;
+
+    private TestRepo repo;
+    /** Larger than Blob.MAP_THRESHOLD, so stored raw. */
+    private String large;
+
+    @BeforeEach
+    void setUp() {
+        large = "0123456789abcdef\n".repeat(100_000);
+        repo = TestRepo.init(new File(tmp, "repo"), "a.txt", "a\n", "dir/large.txt", large);
+    }
+
+    @Test
+    void tarHoldsEveryFile() throws IOException {
+        repo.run("archive", "master", "-o", "../out.tar");
+
+        TreeMap<String, String> files = new TreeMap<>();
+        byte[] tar = Files.readAllBytes(new File(tmp, "out.tar").toPath());
+        int offset = 0;
+        while (tar[offset] != 0) {
+            String name = new String(tar, offset, 100, StandardCharsets.UTF_8).replace("\0", "");
+            int size = Integer.parseInt(new String(tar, offset + 124, 11, StandardCharsets.US_ASCII), 8);
+            offset += 512;
+            files.put(name, new String(tar, offset, size, StandardCharsets.UTF_8));
+            offset += (size + 511) / 512 * 512;
+        }
+        assertEquals(offset + 1024, tar.length);
+        assertEquals("a\n", files.get("a.txt"));
+        assertEquals(large, files.get("dir/large.txt"));
+        assertEquals(2, files.size());
+    }
+
+    @Test
+    void zipHoldsEveryFile() throws IOException {
+        repo.run("archive", "master", "--format=zip", "-o", "../out.zip");
+
+        TreeMap<String, String> files = new TreeMap<>();
+        try (InputStream in = new FileInputStream(new File(tmp, "out.zip"));
+             ZipInputStream zip = new ZipInputStream(in)) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                files.put(entry.getName(), new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        assertEquals(Arrays.asList("a.txt", "dir/large.txt"), files.keySet().stream().toList());
+        assertEquals("a\n", files.get("a.txt"));
+        assertEquals(large, files.get("dir/large.txt"));
+    }
+}
@@ -0,0 +1,55 @@
+package gitlet;
+
+import java.io.File;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchTest {
+
+    @TempDir
+    File tmp;
+
+    @Test
+    void batchGoesOnAfterAFailure() {
+        TestRepo repo = TestRepo.init(tmp, "a.txt", "a\n");
+        repo.write("b.txt", "b\n");
+
+        String out = repo.batch(
+                "# comments and blank lines are skipped",
+                "",
+                "add missing.txt",
+                "add b.txt",
+                "commit \"add \\\"b\\\"\"",
+                "checkout no-such-branch",
+                "log -n 1");
+        assertTrue(out.contains("File does not exist."), out);
+        assertTrue(out.contains("No such branch exists."), out);
+        assertTrue(out.contains("add \"b\""), out);
+        assertTrue(out.contains("line 3: File does not exist."), out);
+        assertTrue(out.contains("line 6: No such branch exists."), out);
+        assertTrue(repo.run("status").contains("=== Staged Files ===\n\n"));
+    }
+
+    @Test
+    void failedCommitKeepsTheStage() {
+        TestRepo repo = TestRepo.init(tmp, "a.txt", "a\n");
+        String master = repo.branch("master");
+
+        String out = repo.batch("branch other", "rm a.txt", "commit \"\"", "status");
+        assertTrue(out.contains("Please enter a commit message."), out);
+        assertEquals(master, repo.branch("master"));
+        assertEquals(master, repo.branch("other"));
+        assertTrue(out.contains("=== Removed Files ===\na.txt"), out);
+    }
+
+    @Test
+    void batchRefusesNestedBatches() {
+        TestRepo repo = TestRepo.init(tmp);
+        String out = repo.batch("batch -", "watch");
+        assertTrue(out.contains("line 1: Cannot run batch in a batch."), out);
+        assertTrue(out.contains("line 2: Cannot run watch in a batch."), out);
+    }
+}
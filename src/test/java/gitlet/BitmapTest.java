@@ -0,0 +1,87 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BitmapTest {
+
+    @TempDir
+    File tmp;
+
+    private static Set<String> names(TestRepo repo, String dir) {
+        String[] names = repo.file(dir).list();
+        return names == null ? Set.of() : Set.of(names);
+    }
+
+    /** A repository whose master is the master of REMOTE, reachable as
+     *  "origin". */
+    private TestRepo cloneOf(TestRepo remote) {
+        TestRepo repo = new TestRepo(new File(tmp, "local"));
+        repo.run("init");
+        repo.run("add-remote", "origin", remote.file(".gitlet").getAbsolutePath());
+        repo.run("fetch", "origin", "master");
+        repo.run("reset", remote.branch("master"));
+        return repo;
+    }
+
+    @Test
+    void pushSendsWhatTheRemoteLacks() {
+        TestRepo remote = TestRepo.init(new File(tmp, "remote"), "a.txt", "a\n");
+        TestRepo repo = cloneOf(remote);
+
+        repo.write("b.txt", "b\n");
+        repo.run("add", "b.txt");
+        repo.run("commit", "add b");
+        repo.run("write-bitmaps");
+        assertTrue(repo.exists(".gitlet/bitmaps/" + repo.branch("master")));
+        // a commit made after the bitmaps were written
+        repo.write("c.txt", "c\n");
+        repo.run("add", "c.txt");
+        repo.run("commit", "add c");
+
+        repo.run("push", "origin", "master");
+        assertEquals(repo.branch("master"), remote.branch("master"));
+        assertEquals(names(repo, ".gitlet/commits"), names(remote, ".gitlet/commits"));
+        assertEquals(names(repo, ".gitlet/blobs"), names(remote, ".gitlet/blobs"));
+        assertTrue(remote.run("fsck").contains("\"errors\":0"));
+    }
+
+    @Test
+    void shallowRepositoryGetsNoBitmaps() {
+        TestRepo remote = TestRepo.init(new File(tmp, "remote"), "a.txt", "1\n");
+        remote.write("a.txt", "2\n");
+        remote.run("add", "a.txt");
+        remote.run("commit", "change 2");
+        TestRepo repo = new TestRepo(new File(tmp, "local"));
+        repo.run("init");
+        repo.run("add-remote", "origin", remote.file(".gitlet").getAbsolutePath());
+
+        repo.run("fetch", "origin", "master", "--depth", "1");
+        String out = repo.run("write-bitmaps");
+        assertTrue(out.contains("Cannot write bitmaps in a shallow repository."), out);
+        assertFalse(repo.exists(".gitlet/bitmaps/objects"));
+    }
+
+    @Test
+    void deepeningFetchDropsBitmaps() {
+        TestRepo remote = TestRepo.init(new File(tmp, "remote"), "a.txt", "1\n");
+        remote.write("a.txt", "2\n");
+        remote.run("add", "a.txt");
+        remote.run("commit", "change 2");
+        TestRepo repo = new TestRepo(new File(tmp, "local"));
+        repo.run("init");
+        repo.run("add-remote", "origin", remote.file(".gitlet").getAbsolutePath());
+        repo.run("write-bitmaps");
+        assertTrue(repo.exists(".gitlet/bitmaps/objects"));
+
+        repo.run("fetch", "origin", "master", "--depth", "1");
+        repo.run("fetch", "origin", "master");
+        assertFalse(repo.exists(".gitlet/shallow"));
+        assertEquals(Set.of(), names(repo, ".gitlet/bitmaps"));
+    }
+}
@@ -0,0 +1,40 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlobTest {
+
+    @TempDir
+    File tmp;
+
+    @Test
+    void largeBlobIsStoredRawAndRestored() throws IOException {
+        TestRepo repo = new TestRepo(tmp);
+        repo.environment.put("JAVA_TOOL_OPTIONS", "-Dgitlet.mapThreshold=16");
+        repo.run("init");
+        String contents = "x".repeat(20000) + "\n";
+        repo.write("big.txt", contents);
+        repo.write("small.txt", "small\n");
+        repo.run("add", "big.txt");
+        repo.run("add", "small.txt");
+        repo.run("commit", "add files");
+
+        byte[] stored = Files.readAllBytes(repo.file(".gitlet/blobs/" + Utils.sha1(contents)).toPath());
+        assertArrayEquals(new byte[] {'g', 'l', 'b', 0}, Arrays.copyOf(stored, 4));
+        assertEquals(contents, new String(stored, 4, stored.length - 4, StandardCharsets.UTF_8));
+
+        repo.write("big.txt", "changed\n");
+        repo.run("checkout", "--", "big.txt");
+        assertEquals(contents, repo.read("big.txt"));
+        assertTrue(repo.run("fsck").contains("\"errors\":0"));
+    }
+}
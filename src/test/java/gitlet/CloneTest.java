@@ -0,0 +1,65 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CloneTest {
+
+    @TempDir
+    File tmp;
+
+    @Test
+    void cloneChecksOutHeadBranchAndSharesObjects() throws IOException {
+        TestRepo source = TestRepo.init(new File(tmp, "source"), "a.txt", "a\n", "dir/b.txt", "b\n");
+        source.run("branch", "dev");
+        source.run("checkout", "dev");
+        source.write("dir/b.txt", "b2\n");
+        source.run("add", "dir/b.txt");
+        source.run("commit", "change b on dev");
+
+        source.run("clone", ".", "../copy");
+        TestRepo copy = new TestRepo(new File(tmp, "copy"));
+        assertEquals("a\n", copy.read("a.txt"));
+        assertEquals("b2\n", copy.read("dir/b.txt"));
+        assertTrue(copy.run("status").contains("*dev"));
+        assertEquals(source.branch("master"), copy.branch("origin__master"));
+
+        String[] blobs = source.file(".gitlet/blobs").list();
+        assertNotNull(blobs);
+        for (String blob : blobs) {
+            assertTrue(Files.isSameFile(source.file(".gitlet/blobs/" + blob).toPath(),
+                    copy.file(".gitlet/blobs/" + blob).toPath()), blob);
+        }
+    }
+
+    @Test
+    void cloneFetchesFromOrigin() {
+        TestRepo source = TestRepo.init(new File(tmp, "source"), "a.txt", "a\n");
+        source.run("clone", ".", "../copy");
+        TestRepo copy = new TestRepo(new File(tmp, "copy"));
+
+        source.write("a.txt", "a2\n");
+        source.run("add", "a.txt");
+        source.run("commit", "change a");
+        copy.run("pull", "origin", "master");
+        assertEquals("a2\n", copy.read("a.txt"));
+        assertEquals(source.branch("master"), copy.branch("origin__master"));
+    }
+
+    @Test
+    void cloneIntoNonEmptyDirectoryIsRefused() {
+        TestRepo source = TestRepo.init(new File(tmp, "source"), "a.txt", "a\n");
+        TestRepo copy = new TestRepo(new File(tmp, "copy"));
+        copy.write("keep.txt", "k\n");
+
+        assertTrue(source.run("clone", ".", "../copy").contains("already exists"));
+        assertFalse(copy.exists(".gitlet"));
+        assertEquals("k\n", copy.read("keep.txt"));
+    }
+}
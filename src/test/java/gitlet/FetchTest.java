@@ -0,0 +1,103 @@
+package gitlet;
+
+import java.io.File;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FetchTest {
+
+    @TempDir
+    File tmp;
+
+    /** A repository with the remote "origin", at REMOTE. */
+    private TestRepo cloneOf(TestRepo remote) {
+        TestRepo repo = new TestRepo(new File(tmp, "local"));
+        repo.run("init");
+        repo.run("add-remote", "origin", remote.file(".gitlet").getAbsolutePath());
+        return repo;
+    }
+
+    @Test
+    void bloblessFetchCopiesBlobsWhenNeeded() {
+        TestRepo remote = TestRepo.init(new File(tmp, "remote"), "a.txt", "a\n");
+        TestRepo repo = cloneOf(remote);
+
+        repo.run("fetch", "origin", "master", "--filter=blob:none");
+        File[] blobs = repo.file(".gitlet/blobs").listFiles();
+        assertEquals(0, blobs == null ? 0 : blobs.length);
+
+        repo.run("checkout", "origin__master");
+        assertEquals("a\n", repo.read("a.txt"));
+    }
+
+    @Test
+    void fetchRetriesBlobRecordedAsMissing() {
+        TestRepo remote = TestRepo.init(new File(tmp, "remote"), "a.txt", "a\n");
+        TestRepo repo = cloneOf(remote);
+        repo.run("fetch", "origin", "master", "--filter=blob:none");
+
+        // The remote loses the blob: the checkout fails and records it.
+        File blob = remote.file(".gitlet/blobs").listFiles()[0];
+        File moved = new File(tmp, "blob");
+        assertTrue(blob.renameTo(moved));
+        String out = repo.run("checkout", "origin__master");
+        assertTrue(out.contains("is missing"), out);
+        assertTrue(repo.file(".gitlet/missing/" + blob.getName()).exists());
+        assertTrue(repo.run("checkout", "origin__master").contains("is missing"));
+
+        // Once the remote has it again, a fetch lets the checkout ask again.
+        assertTrue(moved.renameTo(blob));
+        repo.run("fetch", "origin", "master", "--filter=blob:none");
+        assertFalse(repo.file(".gitlet/missing/" + blob.getName()).exists());
+        repo.run("checkout", "origin__master");
+        assertEquals("a\n", repo.read("a.txt"));
+    }
+
+    @Test
+    void shallowFetchStopsAtDepth() {
+        TestRepo remote = TestRepo.init(new File(tmp, "remote"), "a.txt", "1\n");
+        for (String n : new String[] {"2", "3"}) {
+            remote.write("a.txt", n + "\n");
+            remote.run("add", "a.txt");
+            remote.run("commit", "change " + n);
+        }
+        String tip = remote.branch("master");
+        TestRepo repo = cloneOf(remote);
+
+        repo.run("fetch", "origin", "master", "--depth", "1");
+        assertEquals(tip, repo.read(".gitlet/shallow").trim());
+        assertTrue(repo.file(".gitlet/commits/" + tip).exists());
+        String log = repo.run("log", "origin__master");
+        assertEquals(1, log.split("commit ", -1).length - 1, log);
+
+        // the local initial commit is not an ancestor in the shallow history
+        String out = repo.run("merge", "origin__master");
+        assertTrue(out.contains("No common ancestor"), out);
+
+        repo.run("fetch", "origin", "master", "--depth", "2");
+        log = repo.run("log", "origin__master");
+        assertEquals(2, log.split("commit ", -1).length - 1, log);
+        repo.run("checkout", "origin__master");
+        assertEquals("3\n", repo.read("a.txt"));
+    }
+
+    @Test
+    void deepeningFetchFindsPathsDeletedAtTheBoundary() {
+        TestRepo remote = TestRepo.init(new File(tmp, "remote"), "a.txt", "a\n", "gone.txt", "gone\n");
+        remote.run("rm", "gone.txt");
+        remote.run("commit", "remove gone");
+        TestRepo repo = cloneOf(remote);
+
+        repo.run("fetch", "origin", "master", "--depth", "1");
+        String log = repo.run("log", "origin__master", "--", "gone.txt");
+        assertEquals(0, log.split("commit ", -1).length - 1, log);
+
+        repo.run("fetch", "origin", "master", "--depth", "2");
+        log = repo.run("log", "origin__master", "--", "gone.txt");
+        assertTrue(log.contains("remove gone"), log);
+        assertTrue(log.contains("initial files"), log);
+    }
+}
@@ -0,0 +1,51 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FsckTest {
+
+    @TempDir
+    File tmp;
+
+    @Test
+    void healthyRepositoryHasNoErrors() {
+        TestRepo repo = TestRepo.init(tmp, "a.txt", "a\n", "b.txt", "b\n");
+        String out = repo.run("fsck");
+        assertEquals("{\"commits\":2,\"blobs\":2,\"branches\":1,\"promised\":0,\"errors\":0}\n", out);
+    }
+
+    @Test
+    void damagedObjectsAndRefsAreReported() throws IOException {
+        TestRepo repo = TestRepo.init(tmp, "a.txt", "a\n", "b.txt", "b\n");
+        String a = Utils.sha1("a\n");
+        String b = Utils.sha1("b\n");
+        String master = repo.branch("master");
+        Path blobs = repo.file(".gitlet/blobs").toPath();
+
+        // b's file now holds a, and a's file is gone
+        Files.copy(blobs.resolve(a), blobs.resolve(b), StandardCopyOption.REPLACE_EXISTING);
+        Files.delete(blobs.resolve(a));
+        repo.write(".gitlet/refs/branches/broken", "0".repeat(40));
+
+        String out = repo.run("fsck");
+        assertTrue(out.contains("blob " + b + ": contents hash to " + a + "\n"), out);
+        assertTrue(out.contains("commit " + master + ": missing blob " + a + "\n"), out);
+        assertTrue(out.contains("branch broken: missing commit " + "0".repeat(40) + "\n"), out);
+        assertTrue(out.endsWith("\"errors\":3}\n"), out);
+
+        // a commit that does not deserialize
+        Files.write(repo.file(".gitlet/commits/" + master).toPath(), new byte[] {1, 2, 3});
+        out = repo.run("fsck");
+        assertTrue(out.contains("commit " + master + ": unreadable\n"), out);
+        assertTrue(out.contains("branch master: invalid commit " + master + "\n"), out);
+    }
+}
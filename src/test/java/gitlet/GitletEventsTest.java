@@ -0,0 +1,43 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GitletEventsTest {
+
+    @TempDir
+    File tmp;
+
+    @Test
+    void bundledSettingsRecordObjectAndRefEvents() throws IOException {
+        TestRepo repo = TestRepo.init(new File(tmp, "repo"));
+        repo.write("a.txt", "a\n");
+        File recording = new File(tmp, "rec.jfr");
+        repo.environment.put("JAVA_TOOL_OPTIONS", "-XX:StartFlightRecording:settings="
+                + new File("gitlet.jfc").getAbsolutePath() + ",filename=" + recording.getPath());
+
+        repo.run("add", "a.txt");
+        Set<String> names = new HashSet<>();
+        String blobId = null;
+        for (RecordedEvent event : RecordingFile.readAllEvents(recording.toPath())) {
+            String name = event.getEventType().getName();
+            names.add(name);
+            if (name.equals("gitlet.ObjectWrite")) {
+                blobId = event.getString("id");
+                assertEquals("blob", event.getString("kind"));
+            }
+        }
+        assertTrue(names.containsAll(Set.of("gitlet.ObjectWrite", "gitlet.RefUpdate",
+                "gitlet.WorkingFileHash")), names.toString());
+        assertEquals(Utils.sha1((Object) "a\n".getBytes()), blobId);
+    }
+}
@@ -0,0 +1,74 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogTest {
+
+    @TempDir
+    File tmp;
+
+    private TestRepo repo;
+    /** Ids of the commits c1 to c4, oldest first. */
+    private final List<String> ids = new ArrayList<>();
+
+    /** master: initial commit, then c1 adds a.txt, c2 adds dir/b.txt, c3
+     *  changes a.txt and c4 changes dir/b.txt. */
+    @BeforeEach
+    void setUp() {
+        repo = TestRepo.init(tmp);
+        String[][] changes = {{"a.txt", "a1\n"}, {"dir/b.txt", "b1\n"}, {"a.txt", "a2\n"}, {"dir/b.txt", "b2\n"}};
+        for (int i = 0; i < changes.length; i++) {
+            repo.write(changes[i][0], changes[i][1]);
+            repo.run("add", changes[i][0]);
+            repo.run("commit", "c" + (i + 1));
+            ids.add(repo.branch("master"));
+        }
+    }
+
+    /** Returns the messages of the commits LOG printed, in order. */
+    private static List<String> messages(String log) {
+        List<String> messages = new ArrayList<>();
+        List<String> lines = log.lines().toList();
+        for (int i = 0; i < lines.size(); i++) {
+            if (lines.get(i).startsWith("Date: ")) {
+                messages.add(lines.get(i + 1));
+            }
+        }
+        return messages;
+    }
+
+    @Test
+    void limitStopsTheWalk() {
+        assertEquals(List.of("c4", "c3"), messages(repo.run("log", "-n", "2")));
+        assertEquals(List.of(), messages(repo.run("log", "-n", "0")));
+    }
+
+    @Test
+    void rangeExcludesItsStart() {
+        assertEquals(List.of("c3", "c2"), messages(repo.run("log", ids.get(0) + ".." + ids.get(2))));
+        assertEquals(List.of("c4", "c3", "c2"), messages(repo.run("log", ids.get(0).substring(0, 8) + "..")));
+        assertEquals(List.of("c2", "c1", "initial commit"), messages(repo.run("log", ".." + ids.get(1))));
+    }
+
+    @Test
+    void sinceStopsAtOlderCommits() {
+        assertEquals(List.of("c4", "c3", "c2", "c1"), messages(repo.run("log", "--since", "2000-01-01")));
+        assertEquals(List.of(), messages(repo.run("log", "--since", "2999-01-01")));
+    }
+
+    @Test
+    void pathIsNormalized() {
+        assertEquals(List.of("c3", "c1"), messages(repo.run("log", "--", "a.txt")));
+        assertEquals(List.of("c3", "c1"), messages(repo.run("log", "--", "./a.txt")));
+        assertEquals(List.of("c4", "c2"), messages(repo.run("log", "--", "dir/../dir/b.txt")));
+        assertEquals(List.of("c4"), messages(repo.run("log", "-n", "1", "--", repo.file("dir/b.txt").getAbsolutePath())));
+    }
+}
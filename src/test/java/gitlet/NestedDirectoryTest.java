@@ -0,0 +1,109 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NestedDirectoryTest {
+
+    @TempDir
+    File tmp;
+
+    /** Returns the files listed under HEADING in the output of status. */
+    private static String section(String status, String heading) {
+        int start = status.indexOf("=== " + heading + " ===");
+        int end = status.indexOf("\n\n", start);
+        return status.substring(start, end < 0 ? status.length() : end);
+    }
+
+    @Test
+    void checkoutKeepsUntrackedNestedFiles() {
+        TestRepo repo = TestRepo.init(tmp, "a.txt", "a\n", "dir/tracked.txt", "t\n");
+        repo.run("branch", "other");
+        repo.run("checkout", "other");
+        repo.run("rm", "dir/tracked.txt");
+        repo.run("commit", "remove tracked");
+        repo.write("dir/untracked.txt", "u\n");
+        repo.write("deep/er/untracked.txt", "u\n");
+
+        repo.run("checkout", "master");
+        assertEquals("t\n", repo.read("dir/tracked.txt"));
+        repo.run("checkout", "other");
+        assertFalse(repo.exists("dir/tracked.txt"));
+        assertEquals("u\n", repo.read("dir/untracked.txt"));
+        assertEquals("u\n", repo.read("deep/er/untracked.txt"));
+    }
+
+    @Test
+    void resetKeepsUntrackedNestedFiles() {
+        TestRepo repo = TestRepo.init(tmp, "a.txt", "a\n");
+        String first = repo.branch("master");
+        repo.write("dir/tracked.txt", "t\n");
+        repo.run("add", "dir");
+        repo.run("commit", "add dir");
+        repo.write("dir/untracked.txt", "u\n");
+
+        repo.run("reset", first);
+        assertFalse(repo.exists("dir/tracked.txt"));
+        assertEquals("u\n", repo.read("dir/untracked.txt"));
+    }
+
+    @Test
+    void mergeLeavesUntrackedNestedFilesOut() {
+        TestRepo repo = TestRepo.init(tmp, "a.txt", "a\n", "b.txt", "b\n");
+        repo.run("branch", "other");
+        repo.write("a.txt", "a2\n");
+        repo.run("add", "a.txt");
+        repo.run("commit", "change a");
+        repo.run("checkout", "other");
+        repo.write("b.txt", "b2\n");
+        repo.run("add", "b.txt");
+        repo.run("commit", "change b");
+        repo.run("checkout", "master");
+        repo.write("dir/untracked.txt", "u\n");
+
+        repo.run("merge", "other");
+        assertEquals("b2\n", repo.read("b.txt"));
+        assertEquals("u\n", repo.read("dir/untracked.txt"));
+        String status = repo.run("status");
+        assertTrue(section(status, "Untracked Files").contains("dir/untracked.txt"), status);
+    }
+
+    @Test
+    void ignoredDirectoriesAreLeftAlone() {
+        TestRepo repo = TestRepo.init(tmp, "a.txt", "a\n", ".gitletignore", "build/\n");
+        repo.write("build/out.txt", "o\n");
+
+        String out = repo.run("add", "build");
+        assertTrue(out.contains("That directory is ignored."), out);
+        repo.run("add", ".");
+        String status = repo.run("status");
+        assertFalse(status.contains("build/out.txt"), status);
+
+        repo.run("branch", "other");
+        repo.run("checkout", "other");
+        assertEquals("o\n", repo.read("build/out.txt"));
+    }
+
+    @Test
+    void linkedFilesAreTrackedButLinkedDirectoriesAreNot() throws IOException {
+        TestRepo repo = TestRepo.init(tmp, "dir/target.txt", "t\n");
+        Files.createSymbolicLink(repo.file("link.txt").toPath(), Path.of("dir", "target.txt"));
+        Files.createSymbolicLink(repo.file("loop").toPath(), Path.of("."));
+
+        String untracked = section(repo.run("status"), "Untracked Files");
+        assertTrue(untracked.contains("link.txt"), untracked);
+        assertFalse(untracked.contains("loop"), untracked);
+
+        repo.run("add", "link.txt");
+        repo.run("commit", "add link");
+        repo.write("dir/target.txt", "changed\n");
+        assertTrue(repo.run("status").contains("link.txt (modified)"));
+    }
+}
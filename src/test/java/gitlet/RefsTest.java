@@ -0,0 +1,53 @@
+package gitlet;
+
+import java.io.File;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RefsTest {
+
+    @TempDir
+    File tmp;
+
+    @Test
+    void cloneWritesPackedRefs() {
+        TestRepo source = TestRepo.init(new File(tmp, "source"), "a.txt", "a\n");
+        source.run("branch", "other");
+        source.run("clone", ".", "../copy");
+
+        TestRepo copy = new TestRepo(new File(tmp, "copy"));
+        String[] loose = copy.file(".gitlet/refs/branches").list();
+        assertEquals(0, loose == null ? 0 : loose.length);
+        String master = source.branch("master");
+        assertEquals(master, copy.branch("master"));
+        assertEquals(master, copy.branch("origin__master"));
+        assertEquals(master, copy.branch("origin__other"));
+        String status = copy.run("status");
+        assertTrue(status.contains("*master"), status);
+        assertTrue(status.contains("origin__other"), status);
+    }
+
+    @Test
+    void looseRefsOverridePackedOnes() {
+        TestRepo repo = TestRepo.init(tmp, "a.txt", "a\n");
+        repo.run("branch", "other");
+        repo.run("pack-refs");
+        assertFalse(repo.file(".gitlet/refs/branches/master").exists());
+
+        repo.write("a.txt", "a2\n");
+        repo.run("add", "a.txt");
+        repo.run("commit", "change a");
+        String master = repo.branch("master");
+        assertTrue(repo.file(".gitlet/refs/branches/master").exists());
+        assertNotEquals(master, repo.branch("other"));
+
+        repo.run("rm-branch", "other");
+        assertNull(repo.branch("other"));
+        repo.run("pack-refs");
+        assertEquals(master, repo.branch("master"));
+        assertFalse(repo.run("status").contains("other"));
+    }
+}
@@ -0,0 +1,78 @@
+package gitlet;
+
+import java.io.File;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RenameTest {
+
+    @TempDir
+    File tmp;
+
+    /** Twenty lines, the I-th of which is LINEI when I is in 1..20. */
+    private static String lines(int i, String linei) {
+        StringBuilder text = new StringBuilder();
+        for (int n = 1; n <= 20; n++) {
+            text.append(n == i ? linei : "line " + n).append('\n');
+        }
+        return text.toString();
+    }
+
+    /** A repository whose a.txt holds lines(0, ""), with a branch "other"
+     *  on which a.txt became b.txt with contents RENAMED, while master
+     *  changed a.txt to CHANGED. */
+    private TestRepo renamedOnOther(String renamed, String changed) {
+        TestRepo repo = TestRepo.init(tmp, "a.txt", lines(0, ""));
+        repo.run("branch", "other");
+        repo.run("checkout", "other");
+        repo.write("b.txt", renamed);
+        repo.batch("rm a.txt", "add b.txt", "commit 'rename a to b'");
+        repo.run("checkout", "master");
+        repo.write("a.txt", changed);
+        repo.batch("add a.txt", "commit 'change a'");
+        return repo;
+    }
+
+    @Test
+    void renameOnGivenCarriesHeadChange() {
+        TestRepo repo = renamedOnOther(lines(0, ""), lines(20, "changed on master"));
+
+        String out = repo.run("merge", "other");
+        assertFalse(out.contains("conflict"), out);
+        assertFalse(repo.exists("a.txt"));
+        assertEquals(lines(20, "changed on master"), repo.read("b.txt"));
+        assertTrue(repo.run("status").contains("=== Staged Files ===\n\n=== Removed Files ===\n\n"));
+    }
+
+    @Test
+    void renameOnHeadTakesGivenChange() {
+        TestRepo repo = TestRepo.init(tmp, "a.txt", lines(0, ""));
+        repo.run("branch", "other");
+        repo.write("b.txt", lines(0, ""));
+        repo.batch("rm a.txt", "add b.txt", "commit 'rename a to b'");
+        repo.run("checkout", "other");
+        repo.write("a.txt", lines(1, "changed on other"));
+        repo.batch("add a.txt", "commit 'change a'");
+        repo.run("checkout", "master");
+
+        String out = repo.run("merge", "other");
+        assertFalse(out.contains("conflict"), out);
+        assertFalse(repo.exists("a.txt"));
+        assertEquals(lines(1, "changed on other"), repo.read("b.txt"));
+    }
+
+    @Test
+    void similarRenameConflictsAtTheNewPath() {
+        TestRepo repo = renamedOnOther(lines(1, "edited on other"), lines(20, "changed on master"));
+
+        String out = repo.run("merge", "other");
+        assertTrue(out.contains("Encountered a merge conflict."), out);
+        assertFalse(repo.exists("a.txt"));
+        String merged = repo.read("b.txt");
+        assertTrue(merged.startsWith("<<<<<<< HEAD\n" + lines(20, "changed on master")), merged);
+        assertTrue(merged.endsWith("=======\n" + lines(1, "edited on other") + ">>>>>>>\n"), merged);
+    }
+}
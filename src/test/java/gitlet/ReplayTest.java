@@ -0,0 +1,95 @@
+package gitlet;
+
+import java.io.File;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplayTest {
+
+    @TempDir
+    File tmp;
+
+    /** A repository whose branch "feature" changes b.txt twice while
+     *  master changes a.txt, with feature checked out. */
+    private TestRepo diverged() {
+        TestRepo repo = TestRepo.init(tmp, "a.txt", "a\n", "b.txt", "b\n");
+        repo.run("branch", "feature");
+        commit(repo, "a.txt", "a2\n", "master change");
+        repo.run("checkout", "feature");
+        commit(repo, "b.txt", "b2\n", "feature one");
+        commit(repo, "b.txt", "b3\n", "feature two");
+        return repo;
+    }
+
+    private static void commit(TestRepo repo, String path, String contents, String message) {
+        repo.write(path, contents);
+        repo.run("add", path);
+        repo.run("commit", message);
+    }
+
+    /** Returns the messages of the first-parent history of the head. */
+    private static String messages(TestRepo repo) {
+        StringBuilder out = new StringBuilder();
+        for (String line : repo.run("log").lines().toList()) {
+            if (!line.isEmpty() && !line.startsWith("===") && !line.startsWith("commit ")
+                    && !line.startsWith("Date: ") && !line.startsWith("Merge: ")) {
+                out.append(line).append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    @Test
+    void rebaseReplaysCommitsOntoBranch() {
+        TestRepo repo = diverged();
+        String master = repo.branch("master");
+
+        repo.run("rebase", "master");
+        assertEquals("a2\n", repo.read("a.txt"));
+        assertEquals("b3\n", repo.read("b.txt"));
+        assertEquals("feature two\nfeature one\nmaster change\ninitial files\ninitial commit\n", messages(repo));
+        assertEquals(master, repo.branch("master"));
+        assertTrue(repo.run("status").contains("=== Modifications Not Staged For Commit ===\n\n"));
+    }
+
+    @Test
+    void rebaseWithoutCheckoutMovesOnlyTheBranch() {
+        TestRepo repo = diverged();
+        String feature = repo.branch("feature");
+
+        repo.run("rebase", "master", "--no-checkout");
+        assertNotEquals(feature, repo.branch("feature"));
+        assertEquals("a\n", repo.read("a.txt"));
+        assertEquals("b3\n", repo.read("b.txt"));
+    }
+
+    @Test
+    void conflictingRebaseChangesNothing() {
+        TestRepo repo = diverged();
+        commit(repo, "a.txt", "a3\n", "feature change of a");
+        String feature = repo.branch("feature");
+
+        String out = repo.run("rebase", "master");
+        assertTrue(out.contains("conflict in a.txt"), out);
+        assertEquals(feature, repo.branch("feature"));
+        assertEquals("a3\n", repo.read("a.txt"));
+    }
+
+    @Test
+    void cherryPickAppliesOneCommit() {
+        TestRepo repo = diverged();
+        commit(repo, "c.txt", "c\n", "feature three");
+        String three = repo.branch("feature");
+        repo.run("checkout", "master");
+
+        repo.run("cherry-pick", three);
+        assertEquals("c\n", repo.read("c.txt"));
+        assertEquals("a2\n", repo.read("a.txt"));
+        assertEquals("b\n", repo.read("b.txt"));
+        assertTrue(messages(repo).startsWith("feature three\nmaster change\n"), messages(repo));
+        assertTrue(repo.run("cherry-pick", three).contains("No changes to apply."));
+    }
+}
@@ -0,0 +1,52 @@
+package gitlet;
+
+import java.io.File;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RepoGeneratorTest {
+
+    private static final String[] OPTIONS = {
+        "--files=5", "--commits=12", "--changes=2", "--mergeEvery=4", "--branches=2", "--seed=7"
+    };
+
+    @TempDir
+    File tmp;
+
+    private TestRepo generate(String name) {
+        TestRepo repo = new TestRepo(new File(tmp, name));
+        String out = repo.runClass("gitlet.RepoGenerator", OPTIONS);
+        assertTrue(out.contains("Generated"), out);
+        return repo;
+    }
+
+    @Test
+    void sameOptionsGiveSameRepository() {
+        TestRepo first = generate("first");
+        TestRepo second = generate("second");
+
+        assertEquals(first.branch("master"), second.branch("master"));
+        assertNotNull(first.branch("branch-1"));
+        assertTrue(first.run("fsck").contains("\"errors\":0"));
+        String status = first.run("status");
+        assertTrue(status.contains("=== Untracked Files ===\n"), status);
+        assertFalse(status.contains("(modified)"), status);
+        assertTrue(first.run("log", "-n", "3").contains("synthetic commit 11"));
+    }
+
+    @Test
+    void badOptionsAndExistingRepositoryAreRefused() {
+        TestRepo repo = new TestRepo(new File(tmp, "repo"));
+        assertTrue(repo.runClass("gitlet.RepoGenerator", "--shape=wide").contains("Unknown option shape."));
+        assertTrue(repo.runClass("gitlet.RepoGenerator", "--files=many").contains("Incorrect operands."));
+        assertFalse(repo.exists(".gitlet"));
+
+        repo.run("init");
+        String out = repo.runClass("gitlet.RepoGenerator", OPTIONS);
+        assertTrue(out.contains("already exists"), out);
+        assertEquals(1, repo.run("log").split("commit ", -1).length - 1);
+    }
+}
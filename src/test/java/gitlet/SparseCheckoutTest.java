@@ -0,0 +1,82 @@
+package gitlet;
+
+import java.io.File;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SparseCheckoutTest {
+
+    @TempDir
+    File tmp;
+
+    /** A repository with a.txt and b.txt on master and a branch "other"
+     *  with one commit, staged by CHANGEOTHER.  Master then excludes b.txt
+     *  and changes a.txt, so that merging other is a real merge. */
+    private TestRepo divergedWithBExcluded(Consumer<TestRepo> changeOther) {
+        TestRepo repo = TestRepo.init(tmp, "a.txt", "a\n", "b.txt", "b\n");
+        repo.run("branch", "other");
+        repo.run("checkout", "other");
+        changeOther.accept(repo);
+        repo.run("commit", "change b on other");
+        repo.run("checkout", "master");
+
+        repo.run("sparse-checkout", "set", "*", "!b.txt");
+        assertFalse(repo.exists("b.txt"));
+        repo.write("a.txt", "a2\n");
+        repo.run("add", "a.txt");
+        repo.run("commit", "change a on master");
+        return repo;
+    }
+
+    @Test
+    void mergeTakesGivenVersionOfExcludedFile() {
+        TestRepo repo = divergedWithBExcluded(other -> {
+            other.write("b.txt", "b2\n");
+            other.run("add", "b.txt");
+        });
+
+        repo.run("merge", "other");
+        assertFalse(repo.exists("b.txt"));
+        repo.run("sparse-checkout", "disable");
+        assertEquals("b2\n", repo.read("b.txt"));
+        assertEquals("a2\n", repo.read("a.txt"));
+    }
+
+    @Test
+    void mergeRemovesExcludedFileDeletedByGiven() {
+        TestRepo repo = divergedWithBExcluded(other -> other.run("rm", "b.txt"));
+
+        repo.run("merge", "other");
+        repo.run("sparse-checkout", "disable");
+        assertFalse(repo.exists("b.txt"));
+    }
+
+    @Test
+    void mergeKeepsExcludedFileUnchangedByGiven() {
+        TestRepo repo = divergedWithBExcluded(other -> {
+            other.write("c.txt", "c\n");
+            other.run("add", "c.txt");
+        });
+
+        repo.run("merge", "other");
+        repo.run("sparse-checkout", "disable");
+        assertEquals("b\n", repo.read("b.txt"));
+        assertEquals("c\n", repo.read("c.txt"));
+    }
+
+    @Test
+    void statusSkipsFilesOutsideThePatterns() {
+        TestRepo repo = TestRepo.init(tmp, "a.txt", "a\n", "b.txt", "b\n");
+        repo.run("sparse-checkout", "set", "*", "!b.txt");
+        repo.write("a.txt", "a2\n");
+        repo.write("b.txt", "b2\n");
+
+        String status = repo.run("status");
+        assertTrue(status.contains("a.txt (modified)"), status);
+        assertFalse(status.contains("b.txt (modified)"), status);
+    }
+}
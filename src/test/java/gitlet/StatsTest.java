@@ -0,0 +1,23 @@
+package gitlet;
+
+import java.io.File;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatsTest {
+
+    @TempDir
+    File tmp;
+
+    @Test
+    void jsonNumbersIgnoreLocale() {
+        TestRepo repo = TestRepo.init(tmp, "a.txt", "a\n");
+        repo.environment.put("JAVA_TOOL_OPTIONS", "-Duser.language=de -Duser.country=DE");
+
+        String out = repo.run("stats", "--json");
+        assertTrue(out.contains("\"avgFilesPerCommit\":0.50,"), out);
+    }
+}
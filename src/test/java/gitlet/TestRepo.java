@@ -0,0 +1,161 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/** A working directory for the tests, in which gitlet commands are run.
+ *
+ *  Repository fixes its directories from user.dir when it is loaded, so
+ *  every command runs in a JVM started in DIR, exactly as from the command
+ *  line: one per command, or one per batch().
+ */
+class TestRepo {
+
+    final File dir;
+    /** Variables added to the environment of every command. */
+    final Map<String, String> environment = new HashMap<>();
+
+    TestRepo(File dir) {
+        this.dir = dir;
+        dir.mkdirs();
+    }
+
+    /** Start gitlet with ARGS in the background, for "gitlet watch". */
+    Process start(String... args) {
+        try {
+            return command("gitlet.Main", args).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+        } catch (IOException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+
+    /** Run gitlet with ARGS and return what it printed. */
+    String run(String... args) {
+        return runClass("gitlet.Main", args);
+    }
+
+    /** Run the main class MAINCLASS with ARGS and return what it printed. */
+    String runClass(String mainClass, String... args) {
+        return finish(command(mainClass, args), "", args);
+    }
+
+    /** Run LINES as one "gitlet batch -", in a single JVM, and return what
+     *  it printed, the list of failures included. */
+    String batch(String... lines) {
+        String[] args = {"batch", "-"};
+        return finish(command("gitlet.Main", args), String.join("\n", lines) + "\n", args);
+    }
+
+    /** Start BUILDER, which runs gitlet with ARGS, feed it INPUT, wait
+     *  for it and return what it printed. */
+    private static String finish(ProcessBuilder builder, String input, String... args) {
+        try {
+            Process process = builder.start();
+            try (OutputStream stdin = process.getOutputStream()) {
+                stdin.write(input.getBytes(StandardCharsets.UTF_8));
+            }
+            String out = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            if (!process.waitFor(60, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                fail("gitlet " + String.join(" ", args) + " timed out");
+            }
+            assertTrue(process.exitValue() == 0, "gitlet " + String.join(" ", args) + " failed:\n" + out);
+            return out;
+        } catch (IOException excp) {
+            throw new IllegalStateException(excp);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(excp);
+        }
+    }
+
+    private ProcessBuilder command(String mainClass, String... args) {
+        List<String> command = new ArrayList<>(List.of(
+                new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp", System.getProperty("java.class.path"), mainClass));
+        command.addAll(Arrays.asList(args));
+        ProcessBuilder builder = new ProcessBuilder(command).directory(dir).redirectErrorStream(true);
+        builder.environment().putAll(environment);
+        return builder;
+    }
+
+    /** Write CONTENTS to the working file PATH, creating its directories. */
+    void write(String path, String contents) {
+        File file = file(path);
+        file.getParentFile().mkdirs();
+        try {
+            Files.writeString(file.toPath(), contents);
+        } catch (IOException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+
+    /** Returns the contents of the working file PATH. */
+    String read(String path) {
+        try {
+            return Files.readString(file(path).toPath());
+        } catch (IOException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+
+    boolean exists(String path) {
+        return file(path).exists();
+    }
+
+    File file(String path) {
+        return new File(dir, path);
+    }
+
+    /** Returns the id of the commit at the tip of branch NAME, loose or
+     *  packed, or null if there is no such branch. */
+    String branch(String name) {
+        try {
+            File loose = file(".gitlet/refs/branches/" + name);
+            if (loose.exists()) {
+                return Files.readString(loose.toPath()).trim();
+            }
+            File packed = file(".gitlet/refs/packed-refs");
+            if (packed.exists()) {
+                for (String line : Files.readAllLines(packed.toPath())) {
+                    if (line.endsWith(" " + name)) {
+                        return line.substring(0, line.indexOf(' '));
+                    }
+                }
+            }
+            return null;
+        } catch (IOException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+
+    /** Start a repository with the working files FILES, given as path and
+     *  contents pairs, committed as "initial files".  The commands run as
+     *  one batch, so that setting up takes a single JVM. */
+    static TestRepo init(File dir, String... files) {
+        TestRepo repo = new TestRepo(dir);
+        List<String> lines = new ArrayList<>(List.of("init"));
+        for (int i = 0; i < files.length; i += 2) {
+            repo.write(files[i], files[i + 1]);
+            lines.add("add '" + files[i] + "'");
+        }
+        if (files.length > 0) {
+            lines.add("commit 'initial files'");
+        }
+        String out = repo.batch(lines.toArray(new String[0]));
+        assertTrue(out.isEmpty(), "setting up " + dir + " failed:\n" + out);
+        return repo;
+    }
+}
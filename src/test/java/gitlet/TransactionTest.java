@@ -0,0 +1,79 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class TransactionTest {
+
+    @TempDir
+    File tmp;
+
+    @Test
+    void failedCommandLeavesNoObjects() {
+        TestRepo repo = TestRepo.init(tmp, "a.txt", "a\n");
+        repo.run("branch", "feature");
+        repo.write("a.txt", "master\n");
+        repo.run("add", "a.txt");
+        repo.run("commit", "change a on master");
+        repo.run("checkout", "feature");
+        repo.write("c.txt", "c\n");
+        repo.run("add", "c.txt");
+        repo.run("commit", "add c");
+        repo.write("a.txt", "feature\n");
+        repo.run("add", "a.txt");
+        repo.run("commit", "change a on feature");
+        Set<String> commits = Set.of(repo.file(".gitlet/commits").list());
+
+        // "add c" is replayed, and its new commit written, before "change
+        // a on feature" conflicts
+        String out = repo.run("rebase", "master");
+        assertTrue(out.contains("conflict in a.txt"), out);
+        assertEquals(commits, Set.of(repo.file(".gitlet/commits").list()));
+        String[] temporary = repo.file(".gitlet/tmp").list();
+        assertEquals(0, temporary == null ? 0 : temporary.length);
+        assertTrue(repo.run("fsck").contains("\"errors\":0"));
+    }
+
+    @Test
+    void objectsAndRefsGetDefaultPermissions() throws IOException {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        TestRepo repo = TestRepo.init(tmp, "a.txt", "hello\n");
+        Path plain = Files.createFile(repo.file("plain").toPath());
+
+        Path blob = repo.file(".gitlet/blobs/" + Utils.sha1((Object) "hello\n".getBytes())).toPath();
+        Path branch = repo.file(".gitlet/refs/branches/master").toPath();
+        assertEquals(Files.getPosixFilePermissions(plain), Files.getPosixFilePermissions(blob));
+        assertEquals(Files.getPosixFilePermissions(plain), Files.getPosixFilePermissions(branch));
+    }
+
+    @Test
+    void failedCommandLeavesRefsAlone() {
+        TestRepo repo = TestRepo.init(tmp, "a.txt", "a\n");
+        String master = repo.branch("master");
+        repo.run("branch", "other");
+        repo.write("new.txt", "on master\n");
+        repo.run("add", "new.txt");
+        repo.run("commit", "add new");
+        repo.run("checkout", "other");
+
+        // checkout refuses: it would overwrite the untracked new.txt
+        repo.write("new.txt", "untracked\n");
+        String out = repo.run("checkout", "master");
+
+        assertTrue(out.contains("untracked file"), out);
+        assertTrue(repo.run("status").contains("*other"));
+        assertEquals("untracked\n", repo.read("new.txt"));
+        assertNotEquals(master, repo.branch("master"));
+        assertEquals(master, repo.branch("other"));
+    }
+}
@@ -0,0 +1,63 @@
+package gitlet;
+
+import java.io.File;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class WatcherTest {
+
+    @TempDir
+    File tmp;
+
+    /** Returns the untracked files listed by status. */
+    private static String untracked(TestRepo repo) {
+        String status = repo.run("status");
+        return status.substring(status.indexOf("=== Untracked Files ==="));
+    }
+
+    @Test
+    void statusWithWatcherMatchesFullScan() throws InterruptedException {
+        TestRepo repo = TestRepo.init(tmp, ".gitletignore", "build/\n*.log\n", "a.txt", "a\n");
+        Process watcher = repo.start("watch");
+        try {
+            for (int i = 0; i < 100 && !repo.exists(".gitlet/watch/pid"); i++) {
+                Thread.sleep(50);
+            }
+            assumeTrue(watcher.isAlive() && repo.exists(".gitlet/watch/pid"), "no file watching here");
+            repo.run("status");
+
+            // made after the watcher started
+            repo.write("build/out.o", "object\n");
+            repo.write("build/deep/more.o", "object\n");
+            repo.write("src/b.txt", "b\n");
+            repo.write("src/sub/c.txt", "c\n");
+            repo.write("src/debug.log", "log\n");
+            Thread.sleep(200);
+            String watched = untracked(repo);
+
+            assertTrue(watched.contains("src/b.txt"), watched);
+            assertTrue(watched.contains("src/sub/c.txt"), watched);
+            assertFalse(watched.contains("build/"), watched);
+            assertFalse(watched.contains("debug.log"), watched);
+
+            // un-ignoring build makes its files show up
+            repo.write(".gitletignore", "*.log\n");
+            Thread.sleep(200);
+            assertTrue(untracked(repo).contains("build/deep/more.o"));
+            repo.write("build/later.o", "object\n");
+            Thread.sleep(200);
+            watched = untracked(repo);
+            assertTrue(watched.contains("build/later.o"), watched);
+
+            watcher.destroy();
+            watcher.waitFor();
+            assertEquals(watched, untracked(repo));
+        } finally {
+            watcher.destroy();
+        }
+    }
+}
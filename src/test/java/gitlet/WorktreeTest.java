@@ -0,0 +1,61 @@
+package gitlet;
+
+import java.io.File;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorktreeTest {
+
+    @TempDir
+    File tmp;
+
+    /** A repository with a.txt on master and the branch "feature" checked
+     *  out in the linked working tree "linked". */
+    private TestRepo[] linked() {
+        TestRepo main = TestRepo.init(new File(tmp, "main"), "a.txt", "a\n");
+        main.run("branch", "feature");
+        main.run("worktree", "add", "../linked", "feature");
+        return new TestRepo[] {main, new TestRepo(new File(tmp, "linked"))};
+    }
+
+    @Test
+    void linkedTreeSharesObjectsAndBranches() {
+        TestRepo[] trees = linked();
+        TestRepo main = trees[0];
+        TestRepo linked = trees[1];
+        assertEquals("a\n", linked.read("a.txt"));
+        assertFalse(linked.exists(".gitlet/commits"));
+        assertFalse(linked.exists(".gitlet/blobs"));
+
+        linked.write("b.txt", "b\n");
+        linked.run("add", "b.txt");
+        linked.run("commit", "add b");
+        assertTrue(linked.run("status").contains("*feature"));
+        assertTrue(main.run("status").contains("*master"));
+        assertFalse(main.exists("b.txt"));
+
+        String feature = main.branch("feature");
+        assertTrue(main.run("log", "feature").contains("commit " + feature));
+        main.run("checkout", feature, "--", "b.txt");
+        assertEquals("b\n", main.read("b.txt"));
+        String list = main.run("worktree", "list");
+        assertTrue(list.contains("[master]") && list.contains("[feature]"), list);
+    }
+
+    @Test
+    void branchCheckedOutElsewhereIsRefused() {
+        TestRepo[] trees = linked();
+        TestRepo main = trees[0];
+        TestRepo linked = trees[1];
+
+        assertTrue(main.run("checkout", "feature").contains("checked out in another working tree"));
+        assertTrue(linked.run("checkout", "master").contains("checked out in another working tree"));
+        assertTrue(main.run("rm-branch", "feature").contains("checked out in another working tree"));
+        assertTrue(main.run("worktree", "add", "../other", "feature").contains("already checked out"));
+        assertTrue(main.run("status").contains("*master"));
+        assertTrue(linked.run("status").contains("*feature"));
+    }
+}